@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.installer.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import tv.banko.gamersedition.installer.util.Utils;
+
+/**
+ * Test documents shaped like the real responses: a loader profile from Fabric Meta and Mojang's
+ * {@code version_manifest_v2.json} with 800 versions.
+ */
+final class Fixtures {
+	static final String LOADER_PROFILE = "/fixtures/loader_profile.json";
+	static final String VERSION_MANIFEST = "/fixtures/version_manifest_v2.json";
+
+	static byte[] readBytes(String name) {
+		return read(name).getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String read(String name) {
+		try (InputStream is = Fixtures.class.getResourceAsStream(name)) {
+			if (is == null) throw new IOException("Missing fixture " + name);
+
+			return Utils.readString(is);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Fixtures() {
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.installer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import mjson.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the documents the installer downloads, with the mjson and Gson parsers both used in the codebase.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+	private String profile;
+	private String manifest;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		profile = Fixtures.read(Fixtures.LOADER_PROFILE);
+		manifest = Fixtures.read(Fixtures.VERSION_MANIFEST);
+	}
+
+	@Benchmark
+	public Json profileMjson() {
+		return Json.read(profile);
+	}
+
+	@Benchmark
+	public JsonElement profileGson() {
+		return JsonParser.parseString(profile);
+	}
+
+	@Benchmark
+	public Json manifestMjson() {
+		return Json.read(manifest);
+	}
+
+	@Benchmark
+	public JsonElement manifestGson() {
+		return JsonParser.parseString(manifest);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.installer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tv.banko.gamersedition.installer.util.Utils;
+import tv.banko.gamersedition.installer.util.VersionNumber;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilsBenchmark {
+	@Param({"1048576"})
+	public int fileSize;
+
+	private byte[] profile;
+	private byte[] sha1;
+	private Path file;
+	private String[] versionIds;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		profile = Fixtures.readBytes(Fixtures.LOADER_PROFILE);
+
+		Random random = new Random(0);
+		sha1 = new byte[20];
+		random.nextBytes(sha1);
+
+		byte[] data = new byte[fileSize];
+		random.nextBytes(data);
+		file = Files.createTempFile("benchmark", ".jar");
+		Files.write(file, data);
+
+		List<String> ids = new ArrayList<>();
+
+		for (JsonElement version : JsonParser.parseString(Fixtures.read(Fixtures.VERSION_MANIFEST)).getAsJsonObject().getAsJsonArray("versions")) {
+			ids.add(version.getAsJsonObject().get("id").getAsString());
+		}
+
+		versionIds = ids.toArray(new String[0]);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public String readString() throws IOException {
+		return Utils.readString(new ByteArrayInputStream(profile));
+	}
+
+	/**
+	 * Compare every manifest version with its successor, a mix of releases, pre-releases and snapshots.
+	 */
+	@Benchmark
+	public void compareVersions(Blackhole blackhole) {
+		for (int i = 1; i < versionIds.length; i++) {
+			blackhole.consume(Utils.compareVersions(versionIds[i - 1], versionIds[i]));
+		}
+	}
+
+	@Benchmark
+	public String[] sortVersions() {
+		String[] ids = versionIds.clone();
+		Arrays.sort(ids, VersionNumber.STRING_ORDER);
+		return ids;
+	}
+
+	@Benchmark
+	public String bytesToHex() {
+		return Utils.bytesToHex(sha1);
+	}
+
+	@Benchmark
+	public byte[] sha1() throws IOException {
+		return Utils.sha1(file);
+	}
+}
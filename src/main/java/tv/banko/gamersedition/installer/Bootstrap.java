@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mjson.Json;
+
+import tv.banko.gamersedition.installer.client.ClientInstaller;
+import tv.banko.gamersedition.installer.mod.ModInstaller;
+
+/**
+ * Fetches the metadata an install needs in the background while the user is still looking at the window.
+ *
+ * <p>version.json is requested first and, once the versions are known, the Fabric loader profile. The results are
+ * kept where the installer looks for them, so a failed prefetch only means the data is requested again when it is
+ * needed.
+ */
+public final class Bootstrap {
+	private static final AtomicInteger THREAD_ID = new AtomicInteger();
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "Bootstrap #" + THREAD_ID.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static CompletableFuture<Void> versions;
+
+	/**
+	 * Start prefetching, must be called after the network and cache options have been applied.
+	 */
+	public static synchronized void start() {
+		if (versions != null) return;
+
+		versions = run("version.json", () -> {
+			ModInstaller.loadVersions();
+			return null;
+		});
+		CompletableFuture<Json> loaderProfile = versions.thenCompose(ignored -> ClientInstaller.prefetchProfile(ModInstaller.getMinecraftVersion(), ModInstaller.getLoaderVersion(), EXECUTOR));
+		log("loader profile", loaderProfile);
+	}
+
+	/**
+	 * Get the future completing once the mod, Minecraft and loader versions from version.json are available.
+	 */
+	public static synchronized CompletableFuture<Void> getVersions() {
+		if (versions == null) start();
+
+		return versions;
+	}
+
+	private static <T> CompletableFuture<T> run(String name, Task<T> task) {
+		CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.run();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, EXECUTOR);
+
+		log(name, future);
+		return future;
+	}
+
+	private static void log(String name, CompletableFuture<?> future) {
+		future.whenComplete((result, exc) -> {
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - Main.START_TIME);
+
+			if (exc == null) {
+				System.out.println(String.format("Prefetched %s %d ms after startup", name, millis));
+			} else {
+				System.out.println(String.format("Failed to prefetch %s %d ms after startup: %s", name, millis, exc instanceof CompletionException ? exc.getCause() : exc));
+			}
+		});
+	}
+
+	private interface Task<T> {
+		T run() throws Exception;
+	}
+}
@@ -38,6 +38,9 @@ public abstract class Handler implements InstallerProgress {
 	public JTextField installLocation;
 	public JButton selectFolderButton;
 	public JLabel statusLabel;
+	public JLabel modVersionLabel;
+	public JLabel minecraftVersionLabel;
+	public JLabel loaderVersionLabel;
 
 	private JPanel pane;
 
@@ -76,7 +79,10 @@ public abstract class Handler implements InstallerProgress {
 
 		setupPane2(pane, c, installerGui);
 
-		addRow(pane, c, "prompt.mod.version", new JLabel(ModInstaller.getModVersion()));
+		// the versions come from the network, show placeholders until the bootstrap has fetched them
+		addRow(pane, c, "prompt.mod.version", modVersionLabel = new JLabel(Utils.BUNDLE.getString("prompt.loading")));
+		addRow(pane, c, "prompt.minecraft.version", minecraftVersionLabel = new JLabel(Utils.BUNDLE.getString("prompt.loading")));
+		addRow(pane, c, "prompt.loader.version", loaderVersionLabel = new JLabel(Utils.BUNDLE.getString("prompt.loading")));
 
 		addRow(pane, c, null, statusLabel = new JLabel(""));
 
@@ -87,20 +93,52 @@ public abstract class Handler implements InstallerProgress {
 			install();
 		});
 
-		statusLabel.setText(Utils.BUNDLE.getString("prompt.ready.install"));
+		buttonInstall.setEnabled(false);
+		statusLabel.setText(Utils.BUNDLE.getString("prompt.loading.versions"));
+		Bootstrap.getVersions().whenComplete((result, exc) -> SwingUtilities.invokeLater(() -> onVersionsLoaded(exc)));
+
 		return pane;
 	}
 
+	private void onVersionsLoaded(Throwable exc) {
+		if (exc == null) {
+			modVersionLabel.setText(ModInstaller.getModVersion());
+			minecraftVersionLabel.setText(ModInstaller.getMinecraftVersion());
+			loaderVersionLabel.setText(ModInstaller.getLoaderVersion());
+			updateProgress(Utils.BUNDLE.getString("prompt.ready.install"));
+		} else {
+			// installing retries the request, keep the button usable
+			String unavailable = Utils.BUNDLE.getString("prompt.unavailable");
+			modVersionLabel.setText(unavailable);
+			minecraftVersionLabel.setText(unavailable);
+			loaderVersionLabel.setText(unavailable);
+			statusLabel.setText(Utils.BUNDLE.getString("prompt.exception.versions"));
+			statusLabel.setForeground(Color.RED);
+		}
+
+		buttonInstall.setEnabled(true);
+	}
+
 	protected LoaderVersion queryLoaderVersion() {
 		return new LoaderVersion(ModInstaller.getLoaderVersion());
 	}
 
 	@Override
 	public void updateProgress(String text) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(() -> updateProgress(text));
+			return;
+		}
+
 		statusLabel.setText(text);
 		statusLabel.setForeground(UIManager.getColor("Label.foreground"));
 	}
 
+	@Override
+	public int getFrameRate() {
+		return 10;
+	}
+
 	protected String buildEditorPaneStyle() {
 		JLabel label = new JLabel();
 		Font font = label.getFont();
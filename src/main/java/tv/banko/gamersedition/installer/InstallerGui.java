@@ -18,10 +18,12 @@ package tv.banko.gamersedition.installer;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.io.File;
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -35,6 +37,7 @@ public class InstallerGui extends JFrame {
 	public static InstallerGui instance;
 
 	private JPanel contentPane;
+	private boolean painted;
 
 	public InstallerGui() {
 		initComponents();
@@ -48,6 +51,17 @@ public class InstallerGui extends JFrame {
 		instance = this;
 	}
 
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+
+		if (!painted) {
+			painted = true;
+			// tracked to catch anything slow creeping back into the startup path
+			System.out.println(String.format("First paint %d ms after startup", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - Main.START_TIME)));
+		}
+	}
+
 	public static void selectInstallLocation(Supplier<String> initalDir, Consumer<String> selectedDir) {
 		JFileChooser chooser = new JFileChooser();
 		chooser.setCurrentDirectory(new File(initalDir.get()));
@@ -16,47 +16,187 @@
 
 package tv.banko.gamersedition.installer;
 
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.*;
 import javax.xml.stream.XMLStreamException;
 
+import tv.banko.gamersedition.installer.client.BatchInstaller;
 import tv.banko.gamersedition.installer.client.ClientHandler;
+import tv.banko.gamersedition.installer.client.ClientInstaller;
+import tv.banko.gamersedition.installer.client.LibraryAudit;
+import tv.banko.gamersedition.installer.client.PackBuilder;
+import tv.banko.gamersedition.installer.mod.ModBackups;
 import tv.banko.gamersedition.installer.mod.ModInstaller;
+import tv.banko.gamersedition.installer.util.ArtifactCache;
+import tv.banko.gamersedition.installer.util.DownloadScheduler;
 import tv.banko.gamersedition.installer.util.FabricService;
+import tv.banko.gamersedition.installer.util.MetadataCache;
+import tv.banko.gamersedition.installer.util.Metrics;
+import tv.banko.gamersedition.installer.util.MirrorServer;
+import tv.banko.gamersedition.installer.util.OfflinePack;
 import tv.banko.gamersedition.installer.util.OperatingSystem;
 import tv.banko.gamersedition.installer.util.ArgumentParser;
+import tv.banko.gamersedition.installer.util.Utils;
 
 public class Main {
+	/**
+	 * {@link System#nanoTime()} at startup, startup stages report their timing relative to it.
+	 */
+	public static final long START_TIME = System.nanoTime();
 
 	public static final List<Handler> HANDLERS = new ArrayList<>();
 	public static final ModInstaller MOD_MANAGER = new ModInstaller();
 
 	public static void main(String[] args) throws IOException {
+		try {
+			run(args);
+		} catch (ArgumentParser.InvalidArgumentException e) {
+			System.out.println(e.getMessage() + " (see help)");
+			System.exit(1);
+		}
+	}
+
+	private static void run(String[] args) throws IOException {
 		if (OperatingSystem.CURRENT == OperatingSystem.WINDOWS) {
 			System.setProperty("javax.net.ssl.trustStoreType", "WINDOWS-ROOT");
 		}
 
 		System.out.println("Loading Fabric Installer: " + Main.class.getPackage().getImplementationVersion());
 
-		HANDLERS.add(new ClientHandler());
+		ClientHandler clientHandler = new ClientHandler();
+		HANDLERS.add(clientHandler);
 
 		ArgumentParser argumentParser = ArgumentParser.create(args);
 
-		String metaUrl = argumentParser.has("metaurl") ? argumentParser.get("metaurl") : null;
-		String mavenUrl = argumentParser.has("mavenurl") ? argumentParser.get("mavenurl") : null;
+		String mirrorUrl = argumentParser.has("mirror") ? argumentParser.get("mirror").replaceFirst("/*$", "/") : null;
+		String metaUrl = argumentParser.has("metaurl") ? argumentParser.get("metaurl") : mirrorUrl != null ? mirrorUrl + MirrorServer.META_PATH : null;
+		String mavenUrl = argumentParser.has("mavenurl") ? argumentParser.get("mavenurl") : mirrorUrl != null ? mirrorUrl + MirrorServer.MAVEN_PATH : null;
+		String releaseUrl = argumentParser.has("releaseurl") ? argumentParser.get("releaseurl") : mirrorUrl != null ? mirrorUrl + MirrorServer.RELEASES_PATH : null;
 
 		if (metaUrl != null || mavenUrl != null) {
 			FabricService.setFixed(metaUrl, mavenUrl);
 		}
 
-		try {
-			InstallerGui.start();
-		} catch (ClassNotFoundException | UnsupportedLookAndFeelException | InstantiationException |
-				 IllegalAccessException | XMLStreamException e) {
-			throw new RuntimeException(e);
+		if (releaseUrl != null) {
+			Utils.setReleaseUrl(releaseUrl);
+		}
+
+		if (argumentParser.has("hedge")) {
+			FabricService.setHedging(true);
+		}
+
+		if (argumentParser.has("failure-threshold")) {
+			FabricService.setFailureThreshold(argumentParser.getInt("failure-threshold", 1, Integer.MAX_VALUE));
+		}
+
+		if (argumentParser.has("legacy-http")) {
+			Utils.useLegacyHttpTransport();
+		}
+
+		if (argumentParser.has("threads")) {
+			DownloadScheduler.setThreads(argumentParser.getInt("threads", 1, DownloadScheduler.MAX_THREADS));
+		}
+
+		if (argumentParser.has("redownload")) {
+			ClientInstaller.setIncremental(false);
+			ModInstaller.setIncremental(false);
+		}
+
+		Path cacheDir = null;
+
+		if (argumentParser.has("no-cache")) {
+			ArtifactCache.disable();
+			MetadataCache.disable();
+		} else {
+			cacheDir = Paths.get(argumentParser.getOrDefault("cache-dir", () -> Utils.findDefaultCacheDir().toString()));
+			long cacheSize = argumentParser.has("cache-size") ? argumentParser.getLong("cache-size", 1, Long.MAX_VALUE >> 20) << 20 : ArtifactCache.DEFAULT_MAX_SIZE;
+			long metaTtl = argumentParser.has("meta-ttl") ? TimeUnit.SECONDS.toMillis(argumentParser.getLong("meta-ttl", 0, Integer.MAX_VALUE)) : MetadataCache.DEFAULT_TTL_MS;
+			ArtifactCache.configure(cacheDir, cacheSize);
+			MetadataCache.configure(cacheDir, metaTtl);
+		}
+
+		// -no-cache means nothing is written to the cache dir, the report has to be asked for explicitly then
+		Path metricsFile = argumentParser.has("metrics") ? Paths.get(argumentParser.get("metrics"))
+				: cacheDir != null ? cacheDir.resolve("metrics.json") : null;
+		Metrics.setReports(metricsFile, argumentParser.has("prometheus") ? Paths.get(argumentParser.get("prometheus")) : null);
+		Runtime.getRuntime().addShutdownHook(new Thread(Metrics::writeReports, "Metrics"));
+
+		if (argumentParser.has("pack")) {
+			OfflinePack.load(Paths.get(argumentParser.get("pack")));
+		}
+
+		if (argumentParser.has("serve-mirror")) {
+			MirrorServer.start(argumentParser.getInt("serve-mirror", 1, 65535));
+			return; // the server threads keep running
+		}
+
+		if (argumentParser.has("keep-backups")) {
+			ModBackups.setRetention(argumentParser.getInt("keep-backups", 1, Integer.MAX_VALUE));
+		}
+
+		if (argumentParser.has("restore-mods")) {
+			Path dir = Paths.get(argumentParser.getOrDefault("dir", () -> Utils.findDefaultInstallDir().toString()));
+			String name = argumentParser.getOrDefault("restore-mods", () -> null);
+			ModBackups.restore(dir, name == null || name.isEmpty() ? ModBackups.LATEST : name);
+			System.exit(0);
+		}
+
+		if (argumentParser.has("verify")) {
+			Path dir = Paths.get(argumentParser.getOrDefault("dir", () -> Utils.findDefaultInstallDir().toString()));
+			System.exit(LibraryAudit.run(dir));
+		}
+
+		String command = argumentParser.getCommand().orElse(null);
+
+		if (GraphicsEnvironment.isHeadless() && command == null) {
+			command = "help";
+		}
+
+		if (command == null) {
+			Bootstrap.start();
+
+			try {
+				InstallerGui.start();
+			} catch (ClassNotFoundException | UnsupportedLookAndFeelException | InstantiationException |
+					 IllegalAccessException | XMLStreamException e) {
+				throw new RuntimeException(e);
+			}
+		} else if (command.equals("help")) {
+			System.out.println("help - Opens this menu");
+			HANDLERS.forEach(handler -> System.out.printf("%s %s%n", handler.name().toLowerCase(Locale.ROOT), handler.cliHelp()));
+			System.out.printf("batch %s (plus the client options except -dir and -launcher)%n", BatchInstaller.cliHelp());
+			System.out.printf("pack %s%n", PackBuilder.cliHelp());
+		} else if (command.equals("pack")) {
+			System.exit(PackBuilder.run(argumentParser));
+		} else if (command.equals("batch")) {
+			Bootstrap.start();
+			System.exit(BatchInstaller.run(clientHandler, argumentParser));
+		} else {
+			for (Handler handler : HANDLERS) {
+				if (command.equalsIgnoreCase(handler.name())) {
+					Bootstrap.start();
+
+					try {
+						handler.installCli(argumentParser);
+					} catch (Exception e) {
+						throw new RuntimeException("Failed to install " + handler.name(), e);
+					}
+
+					return;
+				}
+			}
+
+			//Only reached if a handler is not found
+			System.out.println("No handler found for " + command + " see help");
+			System.exit(1);
 		}
 	}
 }
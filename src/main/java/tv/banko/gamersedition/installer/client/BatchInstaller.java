@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import tv.banko.gamersedition.installer.util.ArgumentParser;
+import tv.banko.gamersedition.installer.util.ArtifactCache;
+import tv.banko.gamersedition.installer.util.InstallerProgress;
+import tv.banko.gamersedition.installer.util.Utils;
+
+/**
+ * Installs to many launcher directories listed in a manifest, several at a time.
+ *
+ * <p>The manifest is a JSON array of targets: {@code [{"dir": "...", "launcher": "win32", "noprofile": false}]},
+ * relative directories are resolved against the manifest's location and {@code launcher} is detected if omitted.
+ * Targets share their downloads: the loader profile and the mod jar are fetched once, libraries are fetched once
+ * into the {@link ArtifactCache} and linked into every target.
+ */
+public final class BatchInstaller {
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	private final ClientHandler handler;
+	private final List<Target> targets;
+	private final int parallelism;
+
+	public static String cliHelp() {
+		return "-manifest <json array of {dir, launcher, noprofile} targets> -parallel <concurrent installs, default 4>";
+	}
+
+	/**
+	 * Run the batch described by the command line.
+	 *
+	 * @return the process exit code, 0 if all targets were installed, 1 otherwise
+	 */
+	public static int run(ClientHandler handler, ArgumentParser args) throws IOException {
+		Path manifest = Paths.get(args.get("manifest")).toAbsolutePath();
+		int parallelism = args.has("parallel") ? args.getInt("parallel", 1, Integer.MAX_VALUE) : DEFAULT_PARALLELISM;
+
+		return new BatchInstaller(handler, readManifest(manifest), parallelism).run();
+	}
+
+	private BatchInstaller(ClientHandler handler, List<Target> targets, int parallelism) {
+		this.handler = handler;
+		this.targets = targets;
+		this.parallelism = parallelism;
+	}
+
+	private int run() {
+		if (ArtifactCache.get() == null) {
+			System.out.println("Warning: the artifact cache is disabled, every target downloads its own libraries");
+		}
+
+		int threads = Math.max(1, Math.min(parallelism, targets.size()));
+		System.out.println(String.format("Installing to %d targets, %d at a time", targets.size(), threads));
+
+		AtomicInteger threadId = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "Batch Install #" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		List<Future<?>> futures = new ArrayList<>();
+
+		try {
+			for (Target target : targets) {
+				futures.add(executor.submit(() -> install(target)));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause()); // install() catches everything itself
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return printSummary();
+	}
+
+	private void install(Target target) {
+		long start = System.nanoTime();
+		InstallerProgress progress = new InstallerProgress() {
+			@Override
+			public void updateProgress(String text) {
+				System.out.println("[" + target.dir + "] " + text);
+			}
+
+			@Override
+			public void error(Throwable throwable) {
+				throw new RuntimeException(throwable);
+			}
+		};
+
+		try {
+			handler.installCli(target.dir, target.launcherType, target.noProfile, progress);
+		} catch (Throwable t) {
+			target.error = t;
+			System.out.println("[" + target.dir + "] Failed: " + t);
+		} finally {
+			target.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		}
+	}
+
+	private int printSummary() {
+		int failed = 0;
+
+		System.out.println();
+		System.out.println("Summary:");
+
+		for (Target target : targets) {
+			if (target.error != null) failed++;
+
+			System.out.println(String.format(Locale.ENGLISH, "  %-6s %6.1f s  %s%s",
+					target.error == null ? "OK" : "FAILED",
+					target.millis / 1000.0,
+					target.dir,
+					target.error == null ? "" : " - " + getMessage(target.error)));
+		}
+
+		System.out.println(String.format("%d of %d targets installed", targets.size() - failed, targets.size()));
+
+		return failed == 0 ? 0 : 1;
+	}
+
+	private static String getMessage(Throwable t) {
+		while (t.getClass() == RuntimeException.class && t.getCause() != null) { // plain wrappers
+			t = t.getCause();
+		}
+
+		return t.getMessage() != null ? t.getMessage() : t.toString();
+	}
+
+	private static List<Target> readManifest(Path manifest) throws IOException {
+		List<Target> targets = new ArrayList<>();
+
+		try {
+			for (JsonElement element : JsonParser.parseString(Utils.readString(manifest)).getAsJsonArray()) {
+				JsonObject json = element.getAsJsonObject();
+
+				if (!json.has("dir")) throw new IOException("Target without dir in " + manifest);
+
+				Path dir = manifest.getParent().resolve(json.get("dir").getAsString()).normalize();
+				ProfileInstaller.LauncherType launcherType = json.has("launcher")
+						? ProfileInstaller.LauncherType.valueOf(json.get("launcher").getAsString().toUpperCase(Locale.ROOT))
+						: null;
+				boolean noProfile = json.has("noprofile") && json.get("noprofile").getAsBoolean();
+
+				targets.add(new Target(dir, launcherType, noProfile));
+			}
+		} catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+			throw new IOException("Invalid batch manifest " + manifest, e);
+		}
+
+		return targets;
+	}
+
+	private static final class Target {
+		final Path dir;
+		final ProfileInstaller.LauncherType launcherType;
+		final boolean noProfile;
+		volatile Throwable error;
+		volatile long millis;
+
+		Target(Path dir, ProfileInstaller.LauncherType launcherType, boolean noProfile) {
+			this.dir = dir;
+			this.launcherType = launcherType;
+			this.noProfile = noProfile;
+		}
+	}
+}
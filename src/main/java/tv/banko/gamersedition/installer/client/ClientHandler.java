@@ -59,13 +59,13 @@ public class ClientHandler extends Handler {
 
 	private void doInstall() {
 		String gameVersion = "1.20.4";
-		LoaderVersion loaderVersion = queryLoaderVersion();
-		if (loaderVersion == null) return;
 
 		System.out.println("Installing");
 
 		new Thread(() -> {
 			try {
+				// normally prefetched, but loading version.json may have failed at startup, keep the request off the EDT
+				LoaderVersion loaderVersion = queryLoaderVersion();
 				updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.installing")).format(new Object[]{loaderVersion.name}));
 				Path mcPath = Paths.get(installLocation.getText());
 
@@ -87,7 +87,7 @@ public class ClientHandler extends Handler {
 
 					if (launcherType == null) {
 						// canceled
-						statusLabel.setText(Utils.BUNDLE.getString("prompt.ready.install"));
+						updateProgress(Utils.BUNDLE.getString("prompt.ready.install"));
 						return;
 					}
 				}
@@ -188,7 +188,22 @@ public class ClientHandler extends Handler {
 	@Override
 	public void installCli(ArgumentParser args) throws Exception {
 		Path path = Paths.get(args.getOrDefault("dir", () -> Utils.findDefaultInstallDir().toString()));
+		ProfileInstaller.LauncherType launcherType = null;
+
+		if (args.has("launcher")) {
+			launcherType = ProfileInstaller.LauncherType.valueOf(args.get("launcher").toUpperCase(Locale.ROOT));
+		}
+
+		installCli(path, launcherType, args.has("noprofile"), InstallerProgress.CONSOLE);
+	}
 
+	/**
+	 * Install to a launcher directory without user interaction.
+	 *
+	 * @param launcherType launcher to create the profile for, or null to detect it
+	 * @param noProfile whether to skip creating the launcher profile
+	 */
+	public void installCli(Path path, ProfileInstaller.LauncherType launcherType, boolean noProfile, InstallerProgress progress) throws Exception {
 		if (!Files.exists(path)) {
 			throw new FileNotFoundException("Launcher directory not found at " + path);
 		}
@@ -196,19 +211,14 @@ public class ClientHandler extends Handler {
 		String gameVersion = getGameVersion();
 		LoaderVersion loaderVersion = new LoaderVersion(getLoaderVersion());
 
-		String profileName = ClientInstaller.install(path, gameVersion, loaderVersion, InstallerProgress.CONSOLE);
+		String profileName = ClientInstaller.install(path, gameVersion, loaderVersion, progress);
 
-		if (args.has("noprofile")) {
+		if (noProfile) {
 			return;
 		}
 
 		ProfileInstaller profileInstaller = new ProfileInstaller(path);
 		List<ProfileInstaller.LauncherType> types = profileInstaller.getInstalledLauncherTypes();
-		ProfileInstaller.LauncherType launcherType = null;
-
-		if (args.has("launcher")) {
-			launcherType = ProfileInstaller.LauncherType.valueOf(args.get("launcher").toUpperCase(Locale.ROOT));
-		}
 
 		if (launcherType == null) {
 			if (types.size() == 0) {
@@ -226,7 +236,30 @@ public class ClientHandler extends Handler {
 
 	@Override
 	public String cliHelp() {
-		return "-dir <install dir> -mcversion <minecraft version, default latest> -loader <loader version, default latest> -launcher [win32, microsoft_store]";
+		return String.join(" ",
+				"-dir <install dir>",
+				"-mcversion <minecraft version, default latest>",
+				"-loader <loader version, default latest>",
+				"-launcher [win32, microsoft_store]",
+				"-threads <parallel downloads, default 4>",
+				"-cache-dir <artifact cache dir>",
+				"-cache-size <cache limit in MiB>",
+				"-meta-ttl <seconds metadata is reused without revalidation, default 300>",
+				"-no-cache",
+				"-redownload",
+				"-legacy-http",
+				"-hedge",
+				"-failure-threshold <failures before a mirror is skipped, default 3>",
+				"-noprofile",
+				"-verify (audit the libraries in -dir and exit)",
+				"-keep-backups <mods backups to keep, default 5>",
+				"-restore-mods [backup name, default latest]",
+				"-pack <offline pack to install from>",
+				"-mirror <url of a -serve-mirror installer>",
+				"-releaseurl <github release mirror>",
+				"-serve-mirror <port> (serve meta, maven and releases to other installers)",
+				"-metrics <json report, default metrics.json in the cache dir unless -no-cache>",
+				"-prometheus <prometheus text format report>");
 	}
 
 	@Override
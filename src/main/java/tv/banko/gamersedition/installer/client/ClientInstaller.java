@@ -17,22 +17,44 @@
 package tv.banko.gamersedition.installer.client;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mjson.Json;
 import tv.banko.gamersedition.installer.LoaderVersion;
 import tv.banko.gamersedition.installer.mod.JavaInstaller;
 import tv.banko.gamersedition.installer.mod.ModInstaller;
+import tv.banko.gamersedition.installer.util.DownloadScheduler;
 import tv.banko.gamersedition.installer.util.FabricService;
 import tv.banko.gamersedition.installer.util.InstallerProgress;
 import tv.banko.gamersedition.installer.util.Library;
+import tv.banko.gamersedition.installer.util.Metrics;
+import tv.banko.gamersedition.installer.util.ProgressEvent;
+import tv.banko.gamersedition.installer.util.ProgressTracker;
 import tv.banko.gamersedition.installer.util.Reference;
 import tv.banko.gamersedition.installer.util.Utils;
 
 public class ClientInstaller {
+	private static final Map<String, CompletableFuture<Json>> PROFILES = new ConcurrentHashMap<>();
+
+	private static boolean incremental = true;
+
+	/**
+	 * Configure whether libraries that are already present with the expected hash are kept instead of re-downloaded.
+	 */
+	public static void setIncremental(boolean incremental) {
+		ClientInstaller.incremental = incremental;
+	}
 
 	public static String install(Path mcDir, String gameVersion, LoaderVersion loaderVersion, InstallerProgress progress) throws IOException {
 		System.out.println("Installing " + gameVersion + " with fabric " + loaderVersion.name);
@@ -50,44 +72,146 @@ public class ClientInstaller {
 		Path profileJar = profileDir.resolve(profileName + ".jar");
 		Files.deleteIfExists(profileJar);
 
-		Json json = FabricService.queryMetaJson(String.format("v2/versions/loader/%s/%s/profile/json", gameVersion, loaderVersion.name));
-		Files.write(profileJson, json.toString().getBytes(StandardCharsets.UTF_8));
+		Json json;
 
-		progress.updateProgress(Utils.BUNDLE.getString("java.installing"));
-        try {
-            progress.updateProgress(JavaInstaller.install());
-        } catch (JavaInstaller.JavaInstallationException e) {
-			progress.updateProgress(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+		try (Metrics.Timer timer = Metrics.time("profile")) {
+			json = getProfileJson(gameVersion, loaderVersion.name);
+		}
 
-		progress.updateProgress(String.format(Utils.BUNDLE.getString("mod.installing"), ModInstaller.getModVersion()));
-		try {
-			progress.updateProgress(ModInstaller.install(mcDir));
-		} catch (ModInstaller.ModInstallationException e) {
-			progress.updateProgress(e.getLocalizedMessage());
-			throw new RuntimeException(e);
+		Utils.writeToFile(profileJson, json.toString());
+
+		try (ProgressTracker tracker = ProgressTracker.start(progress)) {
+			tracker.phase(ProgressEvent.Phase.JAVA, Utils.BUNDLE.getString("java.installing"));
+			try (Metrics.Timer timer = Metrics.time("java")) {
+				progress.updateProgress(JavaInstaller.install());
+			} catch (JavaInstaller.JavaInstallationException e) {
+				progress.updateProgress(e.getLocalizedMessage());
+				throw new RuntimeException(e);
+			}
+
+			tracker.phase(ProgressEvent.Phase.MOD, String.format(Utils.BUNDLE.getString("mod.installing"), ModInstaller.getModVersion()));
+			try (Metrics.Timer timer = Metrics.time("mod")) {
+				tracker.track(() -> progress.updateProgress(ModInstaller.install(mcDir)));
+			} catch (ModInstaller.ModInstallationException e) {
+				progress.updateProgress(e.getLocalizedMessage());
+				throw new RuntimeException(e);
+			}
+
+			try (Metrics.Timer timer = Metrics.time("libraries")) {
+				installLibraries(mcDir, json, progress, tracker);
+			}
+
+			tracker.phase(ProgressEvent.Phase.DONE, Utils.BUNDLE.getString("progress.done"));
 		}
 
-		/*
-		Downloading the libraries isn't strictly necessary as the launcher will do it for us.
-		Do it anyway in case the launcher fails, we know we have a working connection to maven here.
-		 */
+		return profileName;
+	}
+
+	/*
+	Downloading the libraries isn't strictly necessary as the launcher will do it for us.
+	Do it anyway in case the launcher fails, we know we have a working connection to maven here.
+	 */
+	private static void installLibraries(Path mcDir, Json json, InstallerProgress progress, ProgressTracker tracker) throws IOException {
 		Path libsDir = mcDir.resolve("libraries");
+		DownloadScheduler scheduler = new DownloadScheduler();
+		AtomicInteger skippedFiles = new AtomicInteger();
+		AtomicLong skippedBytes = new AtomicLong();
+		List<Json> libraries = json.at("libraries").asJsonList();
+
+		tracker.phase(ProgressEvent.Phase.LIBRARIES, Utils.BUNDLE.getString("progress.download.libraries"));
 
-		for (Json libraryJson : json.at("libraries").asJsonList()) {
+		for (Json libraryJson : libraries) {
 			Library library = new Library(libraryJson);
 			Path libraryFile = libsDir.resolve(library.getPath());
 			String url = library.getURL();
 
-			//System.out.println("Downloading "+url+" to "+libraryFile);
-			progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(new Object[]{library.name}));
-			FabricService.downloadSubstitutedMaven(url, libraryFile);
+			tracker.addItems(1, library.size);
+			scheduler.add(() -> {
+				String sha1 = getLibrarySha1(library);
+
+				if (incremental && sha1 != null && Utils.isFileValid(libraryFile, library.size, sha1)) {
+					skippedFiles.incrementAndGet();
+					skippedBytes.addAndGet(Files.size(libraryFile));
+					tracker.skipItem(library.size);
+					Metrics.increment("library_up_to_date");
+					return;
+				}
+
+				//System.out.println("Downloading "+url+" to "+libraryFile);
+				tracker.startItem(library.name);
+				tracker.track(() -> FabricService.downloadSubstitutedMaven(url, libraryFile, sha1, library.sha256));
+				tracker.finishItem();
+				Metrics.increment("library_downloaded");
+			});
 		}
 
+		scheduler.run();
 
-		progress.updateProgress(Utils.BUNDLE.getString("progress.done"));
+		if (skippedFiles.get() > 0) {
+			String message = new MessageFormat(Utils.BUNDLE.getString("progress.download.library.skipped"))
+					.format(new Object[]{skippedFiles.get(), Utils.formatBytes(skippedBytes.get())});
+			System.out.println(message);
+			progress.updateProgress(message);
+		}
+	}
 
-		return profileName;
+	/**
+	 * Start fetching the loader profile in the background, {@link #install} picks it up if the versions match.
+	 */
+	public static CompletableFuture<Json> prefetchProfile(String gameVersion, String loaderVersion, Executor executor) {
+		return PROFILES.computeIfAbsent(getProfilePath(gameVersion, loaderVersion), path -> CompletableFuture.supplyAsync(() -> {
+			try {
+				return FabricService.queryMetaJson(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, executor));
+	}
+
+	/**
+	 * Get the loader profile, concurrent installs share a single request. The profile is only read, never modified.
+	 */
+	private static Json getProfileJson(String gameVersion, String loaderVersion) throws IOException {
+		String path = getProfilePath(gameVersion, loaderVersion);
+		CompletableFuture<Json> future = new CompletableFuture<>();
+		CompletableFuture<Json> existing = PROFILES.putIfAbsent(path, future);
+
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				PROFILES.remove(path, existing);
+				System.out.println("Fetching the loader profile failed, retrying: " + e.getCause());
+				return FabricService.queryMetaJson(path);
+			}
+		}
+
+		try {
+			Json json = FabricService.queryMetaJson(path);
+			future.complete(json);
+			return json;
+		} catch (IOException | RuntimeException e) {
+			PROFILES.remove(path, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	static String getProfilePath(String gameVersion, String loaderVersion) {
+		return String.format("v2/versions/loader/%s/%s/profile/json", gameVersion, loaderVersion);
+	}
+
+	/**
+	 * Get the SHA-1 from the profile, or the one published by the repository, or null if neither is available.
+	 */
+	private static String getLibrarySha1(Library library) {
+		if (library.sha1 != null) return library.sha1;
+
+		try {
+			return FabricService.querySha1SubstitutedMaven(library.getURL());
+		} catch (IOException e) {
+			System.out.println("No checksum available for " + library.name + ": " + e);
+			return null;
+		}
 	}
 }
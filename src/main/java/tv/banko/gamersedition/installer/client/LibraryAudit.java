@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.client;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import mjson.Json;
+
+import tv.banko.gamersedition.installer.util.ArtifactVerifier;
+import tv.banko.gamersedition.installer.util.Library;
+import tv.banko.gamersedition.installer.util.Utils;
+
+/**
+ * Audits an existing libraries directory against the checksums of the installed version profiles.
+ *
+ * <p>Expected hashes come from the {@code downloads} section of Mojang profiles and the {@code sha1} of Fabric
+ * profile libraries, files no profile knows about are checked against a {@code .sha1} file next to them.
+ */
+public final class LibraryAudit {
+	private static final String[] IGNORED_SUFFIXES = {".sha1", ".md5", ".sha256", ".sha512", ".part", ".part.properties"};
+
+	/**
+	 * Audit the libraries of the launcher directory mcDir.
+	 *
+	 * @return the process exit code, 0 if no file failed its checksum, 1 otherwise
+	 */
+	public static int run(Path mcDir) throws IOException {
+		Path libsDir = mcDir.resolve("libraries");
+
+		if (!Files.isDirectory(libsDir)) {
+			System.out.println("No libraries directory found at " + libsDir);
+			return 1;
+		}
+
+		Map<Path, String> expected = readProfileChecksums(mcDir.resolve("versions"), libsDir);
+		ArtifactVerifier verifier = new ArtifactVerifier();
+
+		List<Path> files;
+
+		try (Stream<Path> stream = Files.walk(libsDir)) {
+			files = stream.filter(Files::isRegularFile).filter(LibraryAudit::isArtifact).collect(Collectors.toList());
+		}
+
+		for (Path file : files) {
+			String sha1 = expected.containsKey(file) ? expected.get(file) : null;
+			if (sha1 == null) sha1 = readSidecar(file);
+
+			verifier.add(libsDir.relativize(file).toString(), file, sha1);
+		}
+
+		System.out.println(String.format("Verifying %d files in %s", files.size(), libsDir));
+
+		int ok = 0;
+		int mismatched = 0;
+		int unverified = 0;
+
+		for (ArtifactVerifier.Result result : verifier.verify()) {
+			switch (result.getStatus()) {
+			case OK:
+				ok++;
+				break;
+			case UNVERIFIED:
+				unverified++;
+				break;
+			default:
+				mismatched++;
+				System.out.println(result);
+			}
+		}
+
+		// profiles list the natives of every platform, so libraries referenced but not downloaded are expected
+		long notDownloaded = expected.keySet().stream().filter(path -> !Files.exists(path)).count();
+
+		System.out.println(String.format("%d ok, %d failed, %d without checksum, %d referenced by profiles but not downloaded",
+				ok, mismatched, unverified, notDownloaded));
+
+		return mismatched > 0 ? 1 : 0;
+	}
+
+	private static Map<Path, String> readProfileChecksums(Path versionsDir, Path libsDir) throws IOException {
+		Map<Path, String> checksums = new HashMap<>();
+		if (!Files.isDirectory(versionsDir)) return checksums;
+
+		try (DirectoryStream<Path> versions = Files.newDirectoryStream(versionsDir, Files::isDirectory)) {
+			for (Path versionDir : versions) {
+				Path profile = versionDir.resolve(versionDir.getFileName() + ".json");
+				if (!Files.isRegularFile(profile)) continue;
+
+				try {
+					readLibraries(Json.read(Utils.readString(profile)), libsDir, checksums);
+				} catch (RuntimeException e) { // mjson reports malformed documents with unchecked exceptions
+					System.out.println("Skipping unreadable profile " + profile + ": " + e);
+				}
+			}
+		}
+
+		return checksums;
+	}
+
+	private static void readLibraries(Json profile, Path libsDir, Map<Path, String> checksums) {
+		if (!profile.has("libraries")) return;
+
+		for (Json library : profile.at("libraries").asJsonList()) {
+			if (library.has("downloads")) { // Mojang
+				Json downloads = library.at("downloads");
+
+				if (downloads.has("artifact")) {
+					addDownload(downloads.at("artifact"), libsDir, checksums);
+				}
+
+				if (downloads.has("classifiers")) {
+					for (Json classifier : downloads.at("classifiers").asJsonMap().values()) {
+						addDownload(classifier, libsDir, checksums);
+					}
+				}
+			} else if (library.has("name")) { // Fabric
+				Path path = libsDir.resolve(new Library(library.at("name").asString(), null, null).getPath());
+				String sha1 = library.has("sha1") ? library.at("sha1").asString() : null;
+
+				if (sha1 != null || !checksums.containsKey(path)) checksums.put(path, sha1);
+			}
+		}
+	}
+
+	private static void addDownload(Json download, Path libsDir, Map<Path, String> checksums) {
+		if (!download.has("path") || !download.has("sha1")) return;
+
+		checksums.put(libsDir.resolve(download.at("path").asString()), download.at("sha1").asString());
+	}
+
+	private static String readSidecar(Path file) throws IOException {
+		Path sidecar = file.resolveSibling(file.getFileName() + ".sha1");
+		if (!Files.isRegularFile(sidecar)) return null;
+
+		String[] parts = Utils.readString(sidecar).trim().split("\\s+");
+
+		return parts.length > 0 && parts[0].length() == 40 ? parts[0] : null;
+	}
+
+	private static boolean isArtifact(Path file) {
+		String name = file.getFileName().toString();
+
+		for (String suffix : IGNORED_SUFFIXES) {
+			if (name.endsWith(suffix)) return false;
+		}
+
+		return true;
+	}
+}
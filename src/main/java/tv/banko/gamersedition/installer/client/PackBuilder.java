@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.gson.JsonObject;
+import mjson.Json;
+import tv.banko.gamersedition.installer.mod.ModInstaller;
+import tv.banko.gamersedition.installer.util.ArgumentParser;
+import tv.banko.gamersedition.installer.util.Digests;
+import tv.banko.gamersedition.installer.util.DownloadScheduler;
+import tv.banko.gamersedition.installer.util.FabricService;
+import tv.banko.gamersedition.installer.util.Library;
+import tv.banko.gamersedition.installer.util.MetadataCache;
+import tv.banko.gamersedition.installer.util.OfflinePack;
+import tv.banko.gamersedition.installer.util.Reference;
+import tv.banko.gamersedition.installer.util.Utils;
+
+/**
+ * Writes an {@link OfflinePack} with everything a client install of the current version.json downloads.
+ *
+ * <p>Documents are stored under the keys they are requested by, so installing with {@code -pack} takes the same
+ * code path as an online install. Jars are stored uncompressed as they are compressed already.
+ */
+public final class PackBuilder {
+	public static final String DEFAULT_OUTPUT = "gamers-edition-pack.zip";
+
+	private final Map<String, byte[]> documents = new TreeMap<>();
+	private final Map<String, Path> files = new ConcurrentHashMap<>();
+	private final Set<String> written = new HashSet<>(); // SHA-1s of the entries in the zip
+
+	public static String cliHelp() {
+		return "-output <pack file, default " + DEFAULT_OUTPUT + "> (plus the download options of the client)";
+	}
+
+	/**
+	 * Build the pack described by the command line.
+	 *
+	 * @return the process exit code
+	 */
+	public static int run(ArgumentParser args) throws IOException {
+		Path output = Paths.get(args.getOrDefault("output", () -> DEFAULT_OUTPUT)).toAbsolutePath();
+		Path tempDir = Files.createTempDirectory("gamers-edition-pack");
+
+		try {
+			new PackBuilder().build(output, tempDir);
+			return 0;
+		} finally {
+			deleteRecursively(tempDir);
+		}
+	}
+
+	private void build(Path output, Path tempDir) throws IOException {
+		long start = System.nanoTime();
+
+		ModInstaller.loadVersions();
+		String gameVersion = ModInstaller.getMinecraftVersion();
+		String loaderVersion = ModInstaller.getLoaderVersion();
+
+		System.out.println(String.format("Packing mod %s for %s with loader %s", ModInstaller.getModVersion(), gameVersion, loaderVersion));
+
+		addDocument(Reference.GAMERS_EDITION_VERSION, ModInstaller.getVersionJson()); // the one the mod jar is checked against
+		// not needed to install, but lets the GUI list the Minecraft versions
+		addDocument(Reference.MINECRAFT_LAUNCHER_MANIFEST, MetadataCache.readString(new URL(Reference.MINECRAFT_LAUNCHER_MANIFEST)));
+		addDocument(FabricService.getPackKey(Reference.EXPERIMENTAL_LAUNCHER_MANIFEST), FabricService.readSubstitutedMaven(Reference.EXPERIMENTAL_LAUNCHER_MANIFEST, Utils::readString));
+
+		String profilePath = ClientInstaller.getProfilePath(gameVersion, loaderVersion);
+		Json profile = FabricService.queryMetaJson(profilePath);
+		addDocument("meta/" + profilePath, profile.toString());
+
+		DownloadScheduler scheduler = new DownloadScheduler();
+		List<Library> libraries = new ArrayList<>();
+
+		for (Json libraryJson : profile.at("libraries").asJsonList()) {
+			libraries.add(new Library(libraryJson));
+		}
+
+		for (Library library : libraries) {
+			scheduler.add(() -> {
+				String url = library.getURL();
+				String sha1 = library.sha1;
+
+				if (sha1 == null) {
+					// the install looks the checksum up, so it has to be in the pack too
+					sha1 = FabricService.querySha1SubstitutedMaven(url);
+					addDocument(FabricService.getPackKey(url + ".sha1"), sha1);
+				}
+
+				Path file = tempDir.resolve("libraries").resolve(library.getPath());
+				FabricService.downloadSubstitutedMaven(url, file, sha1, library.sha256);
+				files.put(FabricService.getPackKey(url), file);
+			});
+		}
+
+		scheduler.add(() -> {
+			Path file = tempDir.resolve(ModInstaller.MOD_FILE_NAME);
+			System.out.println("Downloading " + Reference.GAMERS_EDITION_DOWNLOAD);
+			Utils.downloadFile(new URL(Reference.GAMERS_EDITION_DOWNLOAD), file, ModInstaller.getModSha1(), null);
+			files.put(Reference.GAMERS_EDITION_DOWNLOAD, file);
+		});
+
+		scheduler.run();
+
+		JsonObject index = new JsonObject();
+		index.addProperty("format", OfflinePack.FORMAT);
+		index.addProperty("mod_version", ModInstaller.getModVersion());
+		index.addProperty("minecraft_version", gameVersion);
+		index.addProperty("loader_version", loaderVersion);
+
+		Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+
+		try {
+			try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(tmp))) {
+				JsonObject entries = new JsonObject();
+
+				for (Map.Entry<String, byte[]> entry : documents.entrySet()) {
+					entries.add(entry.getKey(), writeDocument(zos, entry.getValue()));
+				}
+
+				for (Map.Entry<String, Path> entry : new TreeMap<>(files).entrySet()) {
+					entries.add(entry.getKey(), writeFile(zos, entry.getValue()));
+				}
+
+				index.add("entries", entries);
+
+				zos.putNextEntry(new ZipEntry(OfflinePack.INDEX));
+				zos.write(index.toString().getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+			}
+
+			Utils.moveAtomically(tmp, output);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+
+		System.out.println(String.format("Packed %d files into %s (%s) in %d ms", documents.size() + files.size(), output,
+				Utils.formatBytes(Files.size(output)), (System.nanoTime() - start) / 1_000_000));
+	}
+
+	private synchronized void addDocument(String key, String content) {
+		documents.put(key, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write a deflated entry named after the SHA-1 of data, unless an identical one was written already.
+	 */
+	private JsonObject writeDocument(ZipOutputStream zos, byte[] data) throws IOException {
+		String sha1 = Digests.toHex(Digests.sha1().digest(data));
+
+		if (written.add(sha1)) {
+			zos.putNextEntry(new ZipEntry(getEntryName(sha1)));
+			zos.write(data);
+			zos.closeEntry();
+		}
+
+		return createIndexEntry(sha1);
+	}
+
+	/**
+	 * Write a stored entry named after the SHA-1 of file, unless an identical one was written already.
+	 */
+	private JsonObject writeFile(ZipOutputStream zos, Path file) throws IOException {
+		String sha1 = Utils.sha1String(file);
+
+		if (written.add(sha1)) {
+			ZipEntry entry = new ZipEntry(getEntryName(sha1));
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(Files.size(file));
+			entry.setCompressedSize(Files.size(file));
+			entry.setCrc(crc32(file));
+
+			zos.putNextEntry(entry);
+			Files.copy(file, zos);
+			zos.closeEntry();
+		}
+
+		return createIndexEntry(sha1);
+	}
+
+	private static String getEntryName(String sha1) {
+		return "objects/" + sha1;
+	}
+
+	private static JsonObject createIndexEntry(String sha1) {
+		JsonObject json = new JsonObject();
+		json.addProperty("name", getEntryName(sha1));
+		json.addProperty("sha1", sha1);
+		return json;
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		try (Stream<Path> stream = Files.walk(dir)) {
+			for (Path path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	private static long crc32(Path file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[64 * 1024];
+
+		try (InputStream is = Files.newInputStream(file)) {
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				crc.update(buffer, 0, len);
+			}
+		}
+
+		return crc.getValue();
+	}
+}
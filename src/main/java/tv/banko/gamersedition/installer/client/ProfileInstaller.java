@@ -27,6 +27,7 @@ import java.util.stream.Collectors;
 
 import mjson.Json;
 
+import tv.banko.gamersedition.installer.util.FileLocks;
 import tv.banko.gamersedition.installer.util.Reference;
 import tv.banko.gamersedition.installer.util.Utils;
 
@@ -52,6 +53,17 @@ public class ProfileInstaller {
 
 		System.out.println("Creating profile");
 
+		// other installer runs may update the file concurrently, hold the lock from reading until replacing it. The
+		// launcher doesn't take the lock, the atomic replacement keeps it from seeing a partly written file
+		try (FileLocks.Lock lock = FileLocks.lock(launcherProfiles)) {
+			updateProfiles(launcherProfiles, name, gameVersion);
+		}
+
+		// Create the mods directory
+		Files.createDirectories(mcDir.resolve("mods"));
+	}
+
+	private static void updateProfiles(Path launcherProfiles, String name, String gameVersion) throws IOException {
 		Json jsonObject = Json.read(Utils.readString(launcherProfiles));
 
 		Json profiles = jsonObject.at("profiles");
@@ -73,9 +85,6 @@ public class ProfileInstaller {
 		profile.set("lastVersionId", name);
 
 		Utils.writeToFile(launcherProfiles, jsonObject.toString());
-
-		// Create the mods directory
-		Files.createDirectories(mcDir.resolve("mods"));
 	}
 
 	private static Json createProfile(String name) {
@@ -29,7 +29,20 @@ public class JavaInstaller {
 
 	public static boolean INSTALLED = false;
 
-	public static String install() throws JavaInstallationException {
+	private static String result;
+
+	/**
+	 * Install Java 17 unless it is present, a successful result is reused by later installs of the same run.
+	 */
+	public static synchronized String install() throws JavaInstallationException {
+		if (result == null) {
+			result = doInstall();
+		}
+
+		return result;
+	}
+
+	private static String doInstall() throws JavaInstallationException {
 		INSTALLED = false;
 		System.out.println("Installing Java 17...");
 
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.mod;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import tv.banko.gamersedition.installer.util.Utils;
+
+/**
+ * Backups of the mods directory, taken before an install replaces it.
+ *
+ * <p>A backup is a {@code mods_<millis>} directory next to {@code mods}, the files are renamed into it rather than
+ * copied. Jars identical to one in an older backup are replaced by a hardlink to it, so reinstalling the same mods
+ * repeatedly doesn't use more space. Only the newest backups are kept.
+ */
+public final class ModBackups {
+	public static final int DEFAULT_RETENTION = 5;
+	public static final String LATEST = "latest";
+
+	private static final Pattern BACKUP_NAME = Pattern.compile("mods_(\\d+)");
+
+	private static int retention = DEFAULT_RETENTION;
+
+	/**
+	 * Configure the number of backups to keep.
+	 */
+	public static void setRetention(int retention) {
+		if (retention < 1) throw new IllegalArgumentException("At least one backup has to be kept, got " + retention);
+
+		ModBackups.retention = retention;
+	}
+
+	/**
+	 * Move the contents of the mods directory into a new backup, leaving partial downloads in place so they can be
+	 * resumed.
+	 *
+	 * @param keep names of files to leave in the mods directory
+	 * @return the backup directory, or null if there was nothing to back up
+	 */
+	public static Path backup(Path mcDir, String... keep) throws IOException {
+		Path backup = createBackup(mcDir, Arrays.asList(keep));
+		if (backup != null) prune(mcDir);
+
+		return backup;
+	}
+
+	/**
+	 * Replace the mods directory with the contents of a backup, the current mods are backed up first.
+	 *
+	 * @param name name of the backup directory or {@link #LATEST}
+	 * @return the restored backup directory
+	 */
+	public static Path restore(Path mcDir, String name) throws IOException {
+		List<Path> backups = listBackups(mcDir);
+		Path source = null;
+
+		if (LATEST.equals(name)) {
+			if (!backups.isEmpty()) source = backups.get(0);
+		} else {
+			source = backups.stream().filter(backup -> backup.getFileName().toString().equals(name)).findFirst().orElse(null);
+		}
+
+		if (source == null) {
+			String available = backups.stream().map(backup -> backup.getFileName().toString()).collect(Collectors.joining(", "));
+			throw new FileNotFoundException("No mods backup " + name + " in " + mcDir + ", available: " + (available.isEmpty() ? "none" : available));
+		}
+
+		System.out.println("Restoring mods from " + source);
+		createBackup(mcDir, Collections.emptyList());
+
+		Path mods = mcDir.resolve("mods");
+		Files.createDirectories(mods);
+
+		// link rather than move, the backup stays available
+		try (Stream<Path> stream = Files.walk(source)) {
+			for (Path file : stream.collect(Collectors.toList())) {
+				Path target = mods.resolve(source.relativize(file).toString());
+
+				if (Files.isDirectory(file)) {
+					Files.createDirectories(target);
+				} else {
+					Files.deleteIfExists(target);
+					linkOrCopy(file, target);
+				}
+			}
+		}
+
+		prune(mcDir);
+		return source;
+	}
+
+	/**
+	 * List the backups in mcDir, newest first.
+	 */
+	public static List<Path> listBackups(Path mcDir) throws IOException {
+		List<Path> backups = new ArrayList<>();
+		if (!Files.isDirectory(mcDir)) return backups;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(mcDir, Files::isDirectory)) {
+			for (Path path : stream) {
+				if (BACKUP_NAME.matcher(path.getFileName().toString()).matches()) backups.add(path);
+			}
+		}
+
+		backups.sort(Comparator.comparingLong(ModBackups::getBackupTime).reversed());
+		return backups;
+	}
+
+	private static Path createBackup(Path mcDir, Collection<String> keep) throws IOException {
+		Path mods = mcDir.resolve("mods");
+		if (!Files.isDirectory(mods)) return null;
+
+		List<Path> entries;
+
+		try (Stream<Path> stream = Files.list(mods)) {
+			entries = stream.filter(path -> !isPartialDownload(path) && !keep.contains(path.getFileName().toString())).collect(Collectors.toList());
+		}
+
+		if (entries.isEmpty()) return null;
+
+		Deduplicator deduplicator = new Deduplicator(listBackups(mcDir));
+		Path backup = mcDir.resolve("mods_" + System.currentTimeMillis());
+		Files.createDirectory(backup);
+
+		System.out.println("Backing up mods to " + backup);
+
+		int linked = 0;
+		long saved = 0;
+
+		for (Path entry : entries) {
+			Path target = backup.resolve(entry.getFileName().toString());
+			move(entry, target);
+
+			if (Files.isRegularFile(target) && deduplicator.link(target)) {
+				linked++;
+				saved += Files.size(target);
+			}
+		}
+
+		System.out.println(String.format("Backed up %d files, %d unchanged since an earlier backup, %s saved", entries.size(), linked, Utils.formatBytes(saved)));
+		return backup;
+	}
+
+	private static void prune(Path mcDir) throws IOException {
+		List<Path> backups = listBackups(mcDir);
+
+		for (Path backup : backups.subList(Math.min(retention, backups.size()), backups.size())) {
+			System.out.println("Deleting old mods backup " + backup);
+			deleteTree(backup);
+		}
+	}
+
+	private static boolean isPartialDownload(Path path) {
+		String name = path.getFileName().toString();
+		return name.endsWith(".part") || name.endsWith(".part.properties");
+	}
+
+	private static long getBackupTime(Path backup) {
+		Matcher matcher = BACKUP_NAME.matcher(backup.getFileName().toString());
+
+		try {
+			return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Rename source to target, copying if they are on different file systems.
+	 */
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target);
+		} catch (DirectoryNotEmptyException e) { // a directory can only be renamed within a file system
+			Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					Files.copy(file, target.resolve(source.relativize(file).toString()));
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+			deleteTree(source);
+		}
+	}
+
+	private static void linkOrCopy(Path source, Path target) throws IOException {
+		try {
+			Files.createLink(target, source);
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			Files.copy(source, target);
+		}
+	}
+
+	private static void deleteTree(Path path) throws IOException {
+		try (Stream<Path> stream = Files.walk(path)) {
+			for (Path file : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Finds files of older backups with the same contents, comparing hashes only for files of equal size.
+	 */
+	private static final class Deduplicator {
+		private final Map<Long, List<Path>> filesBySize = new HashMap<>();
+		private final Map<Path, String> hashes = new HashMap<>();
+
+		Deduplicator(List<Path> backups) throws IOException {
+			for (Path backup : backups) {
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(backup, Files::isRegularFile)) {
+					for (Path file : stream) {
+						filesBySize.computeIfAbsent(Files.size(file), size -> new ArrayList<>()).add(file);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Replace file with a hardlink to an identical file of an older backup.
+		 *
+		 * @return true if file was replaced
+		 */
+		boolean link(Path file) throws IOException {
+			List<Path> candidates = filesBySize.get(Files.size(file));
+			if (candidates == null) return false;
+
+			String hash = Utils.sha1String(file);
+
+			for (Path candidate : candidates) {
+				if (!hash.equals(getHash(candidate))) continue;
+
+				Path link = file.resolveSibling(file.getFileName() + ".link");
+
+				try {
+					Files.deleteIfExists(link);
+					Files.createLink(link, candidate);
+					Utils.moveAtomically(link, file);
+					return true;
+				} catch (IOException | UnsupportedOperationException | SecurityException e) {
+					Files.deleteIfExists(link);
+					return false; // no hardlink support, keep the moved file
+				}
+			}
+
+			return false;
+		}
+
+		private String getHash(Path file) throws IOException {
+			String hash = hashes.get(file);
+
+			if (hash == null) {
+				hash = Utils.sha1String(file);
+				hashes.put(file, hash);
+			}
+
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.mod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipError;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import tv.banko.gamersedition.installer.util.Digests;
+import tv.banko.gamersedition.installer.util.Utils;
+
+/**
+ * Per entry delta from one mod release to the next, advertised in the {@code deltas} object of version.json keyed
+ * by the version it applies to: {@code "deltas": {"<from version>": {"url": "...", "sha1": "..."}}}.
+ *
+ * <p>The new jar is rebuilt byte for byte from raw zip records, so it ends up with the SHA-1 published as
+ * {@code mod_sha1} and is recognized as current on the next run. The delta is a zip with a {@code delta.json} listing
+ * the records of the new jar in order, either {@code {"base": "<entry name>"}} for an unchanged record copied from the
+ * installed jar or {@code {"record": "<delta entry>"}} for a record shipped in the delta, the {@code central} entry
+ * holding the new jar's central directory and the new jar's {@code sha1}. Records are copied with their compressed
+ * data, headers and extra fields as they are, nothing is recompressed.
+ */
+public final class ModDelta {
+	private static final String MANIFEST = "delta.json";
+	private static final String CENTRAL = "central";
+	private static final String RECORDS = "records/";
+
+	final String fromVersion;
+	final String url;
+	final String sha1;
+
+	ModDelta(String fromVersion, JsonObject json) {
+		this.fromVersion = fromVersion;
+		this.url = json.get("url").getAsString();
+		this.sha1 = json.has("sha1") ? json.get("sha1").getAsString() : null;
+	}
+
+	/**
+	 * Rebuild the new jar at target from the installed jar base and the downloaded delta. Target is only replaced
+	 * if the rebuilt jar has the expected SHA-1.
+	 *
+	 * @param expectedSha1 SHA-1 the new jar has to have, or null to only check it against the delta
+	 */
+	public static void apply(Path base, Path delta, Path target, String expectedSha1) throws IOException {
+		Path tmp = target.resolveSibling(target.getFileName() + ".delta.tmp");
+
+		try (ZipFile deltaZip = new ZipFile(delta.toFile());
+				FileChannel baseChannel = FileChannel.open(base, StandardOpenOption.READ)) {
+			JsonObject manifest;
+
+			try (InputStream is = getInputStream(deltaZip, MANIFEST)) {
+				manifest = JsonParser.parseString(Utils.readString(is)).getAsJsonObject();
+			}
+
+			if (!manifest.has("sha1") || !manifest.has("records")) throw new IOException("Delta without records or checksum");
+
+			String sha1 = manifest.get("sha1").getAsString();
+
+			if (expectedSha1 != null && !Digests.hexEquals(expectedSha1, sha1)) {
+				throw new IOException(String.format("Delta builds a jar with SHA-1 %s, expected %s", sha1, expectedSha1));
+			}
+
+			Map<String, Record> baseRecords = readRecords(baseChannel);
+			MessageDigest digest = Digests.newDigest("SHA-1");
+
+			try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+				for (JsonElement element : manifest.getAsJsonArray("records")) {
+					JsonObject record = element.getAsJsonObject();
+
+					if (record.has("base")) {
+						Record baseRecord = baseRecords.get(record.get("base").getAsString());
+						if (baseRecord == null) throw new IOException("Installed jar has no entry " + record.get("base").getAsString());
+
+						baseRecord.copyTo(baseChannel, out);
+					} else {
+						try (InputStream is = getInputStream(deltaZip, record.get("record").getAsString())) {
+							copy(is, out);
+						}
+					}
+				}
+
+				try (InputStream is = getInputStream(deltaZip, CENTRAL)) {
+					copy(is, out);
+				}
+			}
+
+			String actualSha1 = Digests.toHex(digest.digest());
+
+			if (!Digests.hexEquals(sha1, actualSha1)) {
+				throw new IOException(String.format("Rebuilt jar has SHA-1 %s, expected %s", actualSha1, sha1));
+			}
+
+			Utils.moveAtomically(tmp, target);
+		} catch (JsonParseException | IllegalStateException | ClassCastException | NullPointerException | ZipError e) {
+			throw new IOException("Invalid delta", e);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Write a delta that rebuilds the jar to from the jar from. Only used by the tests, the installer never writes
+	 * deltas.
+	 */
+	static void create(Path from, Path to, Path delta) throws IOException {
+		try (FileChannel fromChannel = FileChannel.open(from, StandardOpenOption.READ);
+				FileChannel toChannel = FileChannel.open(to, StandardOpenOption.READ);
+				ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(delta))) {
+			Map<String, Record> fromRecords = readRecords(fromChannel);
+			List<Record> toRecords = new ArrayList<>(readRecords(toChannel).values());
+			toRecords.sort((a, b) -> Long.compare(a.offset, b.offset));
+
+			JsonArray records = new JsonArray();
+
+			for (Record record : toRecords) {
+				byte[] data = record.read(toChannel);
+				Record fromRecord = fromRecords.get(record.name);
+				JsonObject json = new JsonObject();
+
+				if (fromRecord != null && Arrays.equals(data, fromRecord.read(fromChannel))) {
+					json.addProperty("base", record.name);
+				} else {
+					String name = RECORDS + records.size();
+					json.addProperty("record", name);
+					out.putNextEntry(new ZipEntry(name));
+					out.write(data);
+					out.closeEntry();
+				}
+
+				records.add(json);
+			}
+
+			long centralOffset = toRecords.isEmpty() ? 0 : toRecords.get(toRecords.size() - 1).end;
+			out.putNextEntry(new ZipEntry(CENTRAL));
+			out.write(read(toChannel, centralOffset, toChannel.size() - centralOffset));
+			out.closeEntry();
+
+			JsonObject manifest = new JsonObject();
+			manifest.addProperty("sha1", Utils.sha1String(to));
+			manifest.add("records", records);
+
+			out.putNextEntry(new ZipEntry(MANIFEST));
+			out.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+			out.closeEntry();
+		}
+	}
+
+	private static InputStream getInputStream(ZipFile zip, String name) throws IOException {
+		ZipEntry entry = zip.getEntry(name);
+		if (entry == null) throw new IOException("Delta without " + name);
+
+		return zip.getInputStream(entry);
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int len;
+
+		while ((len = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, len);
+		}
+	}
+
+	/**
+	 * Locate the local records (header, data and data descriptor) of all entries through the central directory, each
+	 * record reaches up to the next one or the central directory.
+	 */
+	private static Map<String, Record> readRecords(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int tailSize = (int) Math.min(size, 22 + 0xffff);
+		ByteBuffer tail = ByteBuffer.wrap(read(channel, size - tailSize, tailSize)).order(ByteOrder.LITTLE_ENDIAN);
+		int end = -1;
+
+		// the end of central directory record is followed by a comment of up to 64 KiB
+		for (int pos = tailSize - 22; pos >= 0; pos--) {
+			if (tail.getInt(pos) == 0x06054b50 && pos + 22 + (tail.getShort(pos + 20) & 0xffff) == tailSize) {
+				end = pos;
+				break;
+			}
+		}
+
+		if (end < 0) throw new IOException("Not a zip file");
+
+		int count = tail.getShort(end + 10) & 0xffff;
+		long centralSize = tail.getInt(end + 12) & 0xffffffffL;
+		long centralOffset = tail.getInt(end + 16) & 0xffffffffL;
+
+		if (count == 0xffff || centralSize == 0xffffffffL || centralOffset == 0xffffffffL) {
+			throw new IOException("Zip64 jars are not supported");
+		}
+
+		ByteBuffer central = ByteBuffer.wrap(read(channel, centralOffset, centralSize)).order(ByteOrder.LITTLE_ENDIAN);
+		List<Record> records = new ArrayList<>(count);
+
+		for (int i = 0, pos = 0; i < count; i++) {
+			if (central.getInt(pos) != 0x02014b50) throw new IOException("Corrupt central directory");
+
+			int nameLength = central.getShort(pos + 28) & 0xffff;
+			int extraLength = central.getShort(pos + 30) & 0xffff;
+			int commentLength = central.getShort(pos + 32) & 0xffff;
+			long offset = central.getInt(pos + 42) & 0xffffffffL;
+			String name = new String(central.array(), pos + 46, nameLength, StandardCharsets.UTF_8);
+
+			records.add(new Record(name, offset));
+			pos += 46 + nameLength + extraLength + commentLength;
+		}
+
+		records.sort((a, b) -> Long.compare(a.offset, b.offset));
+		Map<String, Record> ret = new HashMap<>();
+
+		for (int i = 0; i < records.size(); i++) {
+			Record record = records.get(i);
+			record.end = i + 1 < records.size() ? records.get(i + 1).offset : centralOffset;
+
+			if (record.end < record.offset || ret.put(record.name, record) != null) {
+				throw new IOException("Unsupported zip layout at " + record.name);
+			}
+		}
+
+		return ret;
+	}
+
+	private static byte[] read(FileChannel channel, long offset, long length) throws IOException {
+		if (offset < 0 || length > Integer.MAX_VALUE || offset + length > channel.size()) throw new IOException("Truncated zip file");
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) length);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Truncated zip file");
+		}
+
+		return buffer.array();
+	}
+
+	private static final class Record {
+		final String name;
+		final long offset;
+		long end;
+
+		Record(String name, long offset) {
+			this.name = name;
+			this.offset = offset;
+		}
+
+		byte[] read(FileChannel channel) throws IOException {
+			return ModDelta.read(channel, offset, end - offset);
+		}
+
+		void copyTo(FileChannel channel, OutputStream out) throws IOException {
+			out.write(read(channel));
+		}
+	}
+}
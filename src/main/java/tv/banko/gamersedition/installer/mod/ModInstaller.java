@@ -21,44 +21,200 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.stream.Stream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import tv.banko.gamersedition.installer.LoaderVersion;
+import tv.banko.gamersedition.installer.util.Digests;
+import tv.banko.gamersedition.installer.util.MetadataCache;
+import tv.banko.gamersedition.installer.util.OfflinePack;
 import tv.banko.gamersedition.installer.util.Reference;
 import tv.banko.gamersedition.installer.util.Utils;
 
 public class ModInstaller {
+	public static final String MOD_FILE_NAME = "gamers-edition.jar";
 
-	private static String MOD_VERSION = null;
-	private static String MINECRAFT_VERSION = null;
-	private static String LOADER_VERSION = null;
+	private static volatile String MOD_VERSION = null;
+	private static volatile String MINECRAFT_VERSION = null;
+	private static volatile String LOADER_VERSION = null;
+	private static volatile String MOD_SHA1 = null;
+	private static volatile String VERSION_JSON = null;
+	private static volatile Map<String, ModDelta> MOD_DELTAS = Collections.emptyMap();
+
+	private static boolean incremental = true;
+
+	private static final Object DOWNLOAD_LOCK = new Object();
+	private static Path lastDownload;
+	private static String lastDownloadVersion;
+	private static String lastDownloadSha1;
+
+	/**
+	 * Configure whether an installed mod jar is kept if it is up to date and updated with a delta where possible.
+	 */
+	public static void setIncremental(boolean incremental) {
+		ModInstaller.incremental = incremental;
+	}
 
 	public static String install(Path mcDir) throws ModInstallationException {
-		Path mods = mcDir.resolve("mods");
-		Path backupMods = mcDir.resolve("mods_" + System.currentTimeMillis());
+		Path path = getModFile(mcDir);
 
 		try {
-			try (Stream<Path> stream = Files.list(mods)) {
-				if (stream.findAny().isPresent()) {
-					System.out.println("Backing up mods to " + backupMods);
-					Files.move(mods, backupMods, StandardCopyOption.REPLACE_EXISTING);
-				}
-			}
-		} catch (IOException ignored) {
+			// other mods are moved away, the mod jar is replaced below or kept if it is current
+			ModBackups.backup(mcDir, MOD_FILE_NAME);
+		} catch (IOException e) {
+			System.out.println("Failed to back up the mods directory: " + e);
+		}
+
+		String installedVersion = incremental ? getInstalledVersion(path) : null;
+
+		if (installedVersion != null && installedVersion.equals(getModVersion()) && isInstalledValid(path, getModSha1())) {
+			System.out.println("Mod version " + installedVersion + " is already installed");
+			return String.format(Utils.BUNDLE.getString("mod.success"), getModVersion());
+		}
+
+		// deltas aren't packed, an offline install always uses the full jar
+		ModDelta delta = installedVersion != null && !OfflinePack.isActive() ? MOD_DELTAS.get(installedVersion) : null;
+
+		if (delta != null && applyDelta(delta, path)) {
+			return String.format(Utils.BUNDLE.getString("mod.success"), getModVersion());
 		}
 
 		try {
-			Path path = mods.resolve("gamers-edition.jar");
-			System.out.println("Downloading " + Reference.GAMERS_EDITION_DOWNLOAD);
-			Utils.downloadFile(new URL(Reference.GAMERS_EDITION_DOWNLOAD), path);
-			System.out.println("Downloaded to " + path);
+			download(path);
 			return String.format(Utils.BUNDLE.getString("mod.success"), getModVersion());
 		} catch (IOException e) {
+			System.out.println("Failed to download the mod: " + e);
 			throw new ModInstallationException(Utils.BUNDLE.getString("mod.error.download"));
 		}
 	}
 
+	/**
+	 * Download the mod jar, installs running concurrently or after each other reuse the first download.
+	 */
+	private static void download(Path path) throws IOException {
+		synchronized (DOWNLOAD_LOCK) {
+			if (lastDownload != null && getModVersion().equals(lastDownloadVersion) && Files.isRegularFile(lastDownload)) {
+				Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+				try {
+					Files.createDirectories(path.getParent());
+					Files.copy(lastDownload, tmp, StandardCopyOption.REPLACE_EXISTING);
+
+					// the previous target may have been modified or replaced since, don't pass that on
+					String sha1 = Utils.sha1String(tmp);
+
+					if (!Digests.hexEquals(lastDownloadSha1, sha1)) {
+						throw new IOException(String.format("%s changed since it was downloaded, SHA-1 is %s, expected %s", lastDownload, sha1, lastDownloadSha1));
+					}
+
+					Utils.moveAtomically(tmp, path);
+					System.out.println("Copied mod from " + lastDownload);
+					return;
+				} catch (IOException e) {
+					System.out.println("Failed to copy the mod from " + lastDownload + ", downloading it: " + e);
+				} finally {
+					Files.deleteIfExists(tmp);
+				}
+			}
+
+			System.out.println("Downloading " + Reference.GAMERS_EDITION_DOWNLOAD);
+			// checked against mod_sha1 if it is published, the returned SHA-1 checks the copies made for later targets
+			String sha1 = Utils.downloadFile(new URL(Reference.GAMERS_EDITION_DOWNLOAD), path, getModSha1(), null);
+			System.out.println("Downloaded to " + path);
+
+			lastDownload = path;
+			lastDownloadVersion = getModVersion();
+			lastDownloadSha1 = sha1;
+		}
+	}
+
+	/**
+	 * Get the version from the fabric.mod.json of the installed jar, or null if there is no readable jar.
+	 */
+	private static String getInstalledVersion(Path path) {
+		if (!Files.isRegularFile(path)) return null;
+
+		try {
+			return new LoaderVersion(path).name;
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Failed to read the version of the installed mod: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Check an installed jar against the SHA-1 published for its version.
+	 *
+	 * @param sha1 published SHA-1, or null if there is none and the version is trusted
+	 */
+	static boolean isInstalledValid(Path path, String sha1) {
+		if (sha1 == null) return true; // nothing to check against, trust the version
+
+		try {
+			return Utils.isFileValid(path, -1, sha1);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Update the installed jar with a delta, returns false if the full jar has to be downloaded instead.
+	 */
+	private static boolean applyDelta(ModDelta delta, Path path) {
+		Path deltaFile = null;
+
+		try {
+			System.out.println("Updating mod from " + delta.fromVersion + " to " + getModVersion() + " with delta " + delta.url);
+			deltaFile = Files.createTempFile("gamers-edition", ".delta.zip");
+			Utils.downloadFile(new URL(delta.url), deltaFile, delta.sha1, null);
+			ModDelta.apply(path, deltaFile, path, getModSha1()); // only replaces the jar if it matches mod_sha1
+
+			String version = getInstalledVersion(path);
+
+			if (!getModVersion().equals(version)) {
+				throw new IOException("Delta produced version " + version + ", expected " + getModVersion());
+			}
+
+			System.out.println(String.format("Updated mod with a %s delta", Utils.formatBytes(Files.size(deltaFile))));
+			return true;
+		} catch (IOException e) {
+			System.out.println("Failed to apply the mod delta, downloading the full jar: " + e);
+			return false;
+		} finally {
+			if (deltaFile != null) {
+				try {
+					Files.deleteIfExists(deltaFile);
+				} catch (IOException ignored) {
+					// left in the temp directory
+				}
+			}
+		}
+	}
+
+	public static Path getModFile(Path mcDir) {
+		return mcDir.resolve("mods").resolve(MOD_FILE_NAME);
+	}
+
+	/**
+	 * Get the SHA-1 of the mod jar, or null if version.json doesn't publish one.
+	 */
+	public static String getModSha1() {
+		loadVersions();
+		return MOD_SHA1;
+	}
+
+	/**
+	 * Get the version.json the versions were loaded from.
+	 */
+	public static String getVersionJson() {
+		loadVersions();
+		return VERSION_JSON;
+	}
+
 	public static String getModVersion() {
 		if (MOD_VERSION == null)
 			loadVersions();
@@ -77,9 +233,15 @@ public class ModInstaller {
 		return LOADER_VERSION;
 	}
 
-	private static void loadVersions() {
+	/**
+	 * Load the versions from version.json unless that already happened, called by the getters and the {@code Bootstrap}.
+	 */
+	public static synchronized void loadVersions() {
+		if (LOADER_VERSION != null) return;
+
 		try {
-			String read = Utils.readString(new URL(Reference.GAMERS_EDITION_VERSION));
+			// the mod jar is downloaded from the moving "latest" URL, a cached version.json could have the previous sha1
+			String read = MetadataCache.readRevalidated(new URL(Reference.GAMERS_EDITION_VERSION));
 
 			JsonObject object = JsonParser.parseString(read).getAsJsonObject();
 
@@ -95,14 +257,29 @@ public class ModInstaller {
 				throw new ModInstallationException("Loader version not found in version.json");
 			}
 
+			MOD_SHA1 = object.has("mod_sha1") ? object.get("mod_sha1").getAsString() : null;
+			MOD_DELTAS = readDeltas(object);
 			MOD_VERSION = object.get("mod_version").getAsString();
 			MINECRAFT_VERSION = object.get("minecraft_version").getAsString();
+			VERSION_JSON = read;
 			LOADER_VERSION = object.get("loader_version").getAsString();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private static Map<String, ModDelta> readDeltas(JsonObject object) {
+		if (!object.has("deltas")) return Collections.emptyMap();
+
+		Map<String, ModDelta> deltas = new HashMap<>();
+
+		for (Map.Entry<String, JsonElement> entry : object.getAsJsonObject("deltas").entrySet()) {
+			deltas.put(entry.getKey(), new ModDelta(entry.getKey(), entry.getValue().getAsJsonObject()));
+		}
+
+		return deltas;
+	}
+
 	public static class ModInstallationException extends RuntimeException {
 		public ModInstallationException(String message) {
 			super(message);
@@ -55,6 +55,36 @@ public class ArgumentParser {
 		return argMap.get(argument);
 	}
 
+	/**
+	 * Get a numeric argument.
+	 *
+	 * @throws InvalidArgumentException if it is missing, not a number or not between min and max (inclusive)
+	 */
+	public long getLong(String argument, long min, long max) {
+		String value = argMap.get(argument);
+
+		if (value != null) {
+			try {
+				long ret = Long.parseLong(value.trim());
+				if (ret >= min && ret <= max) return ret;
+			} catch (NumberFormatException ignored) {
+				// reported below
+			}
+		}
+
+		throw new InvalidArgumentException(String.format("Invalid value for -%s: expected a number between %d and %d, got %s",
+				argument, min, max, value == null || value.isEmpty() ? "nothing" : value));
+	}
+
+	/**
+	 * Get a numeric argument.
+	 *
+	 * @throws InvalidArgumentException if it is missing, not a number or not between min and max (inclusive)
+	 */
+	public int getInt(String argument, int min, int max) {
+		return (int) getLong(argument, min, max);
+	}
+
 	public boolean has(String argument) {
 		return argMap.containsKey(argument);
 	}
@@ -102,4 +132,13 @@ public class ArgumentParser {
 	public static ArgumentParser create(String[] args) {
 		return new ArgumentParser(args);
 	}
+
+	/**
+	 * An argument with an unusable value, the message is meant for the user.
+	 */
+	public static class InvalidArgumentException extends IllegalArgumentException {
+		public InvalidArgumentException(String message) {
+			super(message);
+		}
+	}
 }
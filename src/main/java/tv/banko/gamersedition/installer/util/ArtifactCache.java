@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content addressed artifact store shared by all installs on this machine.
+ *
+ * <p>Artifacts are stored once under {@code objects/<sha1 prefix>/<sha1>} and an index maps each Maven coordinate
+ * (the repository relative path) to its SHA-1. Cached files are hardlinked into the target directory where the file
+ * system allows it and copied otherwise. The least recently used objects are evicted once the cache exceeds its size
+ * limit.
+ */
+public final class ArtifactCache {
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static boolean enabled = true;
+	private static ArtifactCache instance;
+
+	private final Path objectsDir;
+	private final Path indexDir;
+	private final long maxSize;
+	private long size = -1; // lazily computed total size of objectsDir
+
+	/**
+	 * Get the active cache or null if caching is disabled.
+	 */
+	public static synchronized ArtifactCache get() {
+		if (!enabled) return null;
+
+		if (instance == null) {
+			instance = new ArtifactCache(Utils.findDefaultCacheDir(), DEFAULT_MAX_SIZE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Configure the cache directory and its size limit in bytes.
+	 */
+	public static synchronized void configure(Path dir, long maxSize) {
+		if (maxSize <= 0) throw new IllegalArgumentException("Cache size must be positive, got " + maxSize);
+
+		enabled = true;
+		instance = new ArtifactCache(dir, maxSize);
+	}
+
+	public static synchronized void disable() {
+		enabled = false;
+		instance = null;
+	}
+
+	private ArtifactCache(Path dir, long maxSize) {
+		this.objectsDir = dir.resolve("objects");
+		this.indexDir = dir.resolve("index");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Materialize a cached artifact at target.
+	 *
+	 * <p>The materialized file is hashed before it is reported as a hit: objects are hardlinked into installs, so a
+	 * library modified in place or a copy cut short would otherwise be served to every later install. A corrupt object
+	 * is removed from the cache together with the index entry pointing at it.
+	 *
+	 * @param key repository relative path identifying the artifact
+	 * @param sha1 expected SHA-1 or null to use the one recorded in the coordinate index, an invalid SHA-1 is a miss
+	 * @param sha256 expected SHA-256 or null if unknown
+	 * @return true if the artifact was served from the cache
+	 */
+	public boolean fetch(String key, String sha1, String sha256, Path target) throws IOException {
+		String indexedSha1 = readIndex(key);
+
+		if (sha1 == null) {
+			if (indexedSha1 == null) return false;
+			sha1 = indexedSha1;
+		} else {
+			sha1 = sha1.toLowerCase(Locale.ROOT);
+		}
+
+		if (!Digests.isSha1(sha1)) return false;
+
+		Path object = getObject(sha1);
+
+		try {
+			synchronized (this) {
+				if (!Files.isRegularFile(object)) return false;
+
+				// the modification time of an object is its last use, see evict(), this keeps it from being evicted next
+				Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+			}
+
+			Files.createDirectories(target.getParent());
+			Files.deleteIfExists(target);
+			linkOrCopy(object, target);
+		} catch (NoSuchFileException e) {
+			return false; // evicted concurrently
+		}
+
+		MessageDigest sha1Digest = Digests.sha1();
+		MessageDigest sha256Digest = sha256 != null ? Digests.newDigest("SHA-256") : null;
+
+		try (InputStream is = Files.newInputStream(target)) {
+			byte[] buffer = new byte[64 * 1024];
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				sha1Digest.update(buffer, 0, len);
+				if (sha256Digest != null) sha256Digest.update(buffer, 0, len);
+			}
+		}
+
+		String actualSha1 = Digests.toHex(sha1Digest.digest());
+
+		if (!Digests.hexEquals(sha1, actualSha1)) {
+			System.out.println(String.format("Discarding corrupt %s from the artifact cache, SHA-1 is %s, expected %s", key, actualSha1, sha1));
+			Files.deleteIfExists(target);
+			discard(key, sha1);
+			return false;
+		}
+
+		if (sha256Digest != null && !Digests.hexEquals(sha256, Digests.toHex(sha256Digest.digest()))) {
+			// the object is intact, but not the file that was asked for, leave it to the download to fail or fix this
+			System.out.println(String.format("Cached %s doesn't have the expected SHA-256 %s", key, sha256));
+			Files.deleteIfExists(target);
+			return false;
+		}
+
+		if (!sha1.equals(indexedSha1)) writeIndex(key, sha1);
+
+		return true;
+	}
+
+	/**
+	 * Add a freshly downloaded artifact to the cache.
+	 */
+	public void store(String key, Path source) throws IOException {
+		store(key, source, Utils.sha1String(source));
+	}
+
+	/**
+	 * Add a freshly downloaded artifact with a known SHA-1 to the cache, saving another read of the file.
+	 */
+	public void store(String key, Path source, String sha1) throws IOException {
+		if (!Digests.isSha1(sha1)) throw new IOException("Invalid SHA-1 " + sha1 + " for " + key);
+
+		sha1 = sha1.toLowerCase(Locale.ROOT);
+		Path object = getObject(sha1);
+
+		if (!Files.exists(object)) {
+			Files.createDirectories(object.getParent());
+			linkOrCopy(source, object);
+
+			synchronized (this) {
+				if (size >= 0) size += Files.size(object);
+			}
+		}
+
+		writeIndex(key, sha1);
+		evict();
+	}
+
+	private synchronized void evict() throws IOException {
+		if (size < 0) {
+			size = 0;
+
+			for (Path object : listObjects()) {
+				size += Files.size(object);
+			}
+		}
+
+		if (size <= maxSize) return;
+
+		List<Path> objects = listObjects();
+		objects.sort(Comparator.comparing(ArtifactCache::getLastModified));
+
+		for (Path object : objects) {
+			if (size <= maxSize) break;
+
+			long objectSize = Files.size(object);
+
+			if (Files.deleteIfExists(object)) {
+				System.out.println("Evicted " + object.getFileName() + " from the artifact cache");
+				size -= objectSize;
+			}
+		}
+	}
+
+	private synchronized void discard(String key, String sha1) throws IOException {
+		Path object = getObject(sha1);
+		long objectSize = Files.exists(object) ? Files.size(object) : 0;
+
+		if (Files.deleteIfExists(object) && size >= 0) size -= objectSize;
+		if (sha1.equals(readIndex(key))) Files.deleteIfExists(getIndex(key));
+	}
+
+	private List<Path> listObjects() throws IOException {
+		if (!Files.isDirectory(objectsDir)) return new ArrayList<>();
+
+		try (Stream<Path> stream = Files.walk(objectsDir, 2)) {
+			return stream.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+	}
+
+	private String readIndex(String key) throws IOException {
+		Path index = getIndex(key);
+		if (!Files.isRegularFile(index)) return null;
+
+		String sha1 = Utils.readString(index).trim();
+		return sha1.isEmpty() ? null : sha1;
+	}
+
+	private void writeIndex(String key, String sha1) throws IOException {
+		Path index = getIndex(key);
+		Files.createDirectories(index.getParent());
+		Utils.writeToFile(index, sha1);
+	}
+
+	private Path getObject(String sha1) {
+		// the hash becomes a path, anything but hex could escape the objects directory
+		if (!Digests.isSha1(sha1)) {
+			throw new IllegalArgumentException("Invalid SHA-1 " + sha1);
+		}
+
+		return objectsDir.resolve(sha1.substring(0, 2)).resolve(sha1);
+	}
+
+	private Path getIndex(String key) {
+		Path index = indexDir.resolve(key + ".sha1").normalize();
+
+		if (!index.startsWith(indexDir)) {
+			throw new IllegalArgumentException("Invalid cache key " + key);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Hardlink source to target, falling back to copying through a temporary file.
+	 */
+	private static void linkOrCopy(Path source, Path target) throws IOException {
+		try {
+			Files.createLink(target, source);
+			return;
+		} catch (FileAlreadyExistsException e) {
+			return; // another installer put it in place concurrently
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			// different file systems or no hardlink support, copy instead
+		}
+
+		Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+		try {
+			Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static FileTime getLastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+}
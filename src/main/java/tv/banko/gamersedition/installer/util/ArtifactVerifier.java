@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes a batch of files in parallel and compares them against their expected SHA-1.
+ *
+ * <p>Hashing is CPU bound, so the batch is spread over one thread per core independent of the download thread count.
+ */
+public final class ArtifactVerifier {
+	private static final AtomicInteger THREAD_ID = new AtomicInteger();
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+		Thread thread = new Thread(r, "Verify Worker #" + THREAD_ID.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final List<Result> results = new ArrayList<>();
+
+	/**
+	 * Add a file to the batch.
+	 *
+	 * @param sha1 expected SHA-1, or null if there is nothing to compare against
+	 */
+	public synchronized void add(String name, Path file, String sha1) {
+		results.add(new Result(name, file, sha1));
+	}
+
+	/**
+	 * Hash all files of the batch.
+	 *
+	 * @return the results in the order the files were added
+	 */
+	public synchronized List<Result> verify() throws IOException {
+		List<Future<?>> futures = new ArrayList<>(results.size());
+
+		for (Result result : results) {
+			futures.add(EXECUTOR.submit(() -> {
+				result.check();
+				return null;
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while verifying files", e);
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+
+		return results;
+	}
+
+	public static final class Result {
+		public final String name;
+		public final Path file;
+		public final String expectedSha1;
+		private Status status;
+		private String actualSha1;
+
+		private Result(String name, Path file, String expectedSha1) {
+			this.name = name;
+			this.file = file;
+			this.expectedSha1 = expectedSha1;
+		}
+
+		private void check() throws IOException {
+			if (!Files.isRegularFile(file)) {
+				status = Status.MISSING;
+				return;
+			}
+
+			actualSha1 = Utils.sha1String(file);
+
+			if (expectedSha1 == null) {
+				status = Status.UNVERIFIED;
+			} else {
+				status = Digests.hexEquals(actualSha1, expectedSha1) ? Status.OK : Status.MISMATCH;
+			}
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Get the SHA-1 of the file, or null if it is missing.
+		 */
+		public String getActualSha1() {
+			return actualSha1;
+		}
+
+		@Override
+		public String toString() {
+			switch (status) {
+			case MISMATCH:
+				return String.format("%s: checksum mismatch, expected %s but got %s (%s)", name, expectedSha1, actualSha1, file);
+			case MISSING:
+				return String.format("%s: missing (%s)", name, file);
+			case UNVERIFIED:
+				return String.format("%s: no checksum published (%s)", name, file);
+			default:
+				return String.format("%s: ok", name);
+			}
+		}
+	}
+
+	public enum Status {
+		OK,
+		MISMATCH,
+		MISSING,
+		/**
+		 * The file exists but there was no checksum to compare it against.
+		 */
+		UNVERIFIED
+	}
+}
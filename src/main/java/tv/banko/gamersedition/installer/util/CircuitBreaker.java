@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stops sending requests to a service after repeated failures.
+ *
+ * <p>After {@code failureThreshold} consecutive failures the breaker opens and rejects requests for a cool-down
+ * window that doubles with every further trip, with some jitter so installers started together don't probe in lockstep.
+ * Once the window has passed a single probe request is let through (half-open); its outcome closes the breaker again
+ * or reopens it for a longer window.
+ */
+final class CircuitBreaker {
+	private static final long BASE_COOLDOWN_MS = 5_000;
+	private static final long MAX_COOLDOWN_MS = 5 * 60_000;
+	private static final double JITTER = 0.2;
+	private static final long PROBE_TIMEOUT_MS = 2L * HttpTransport.TIMEOUT_MS;
+
+	private final String name;
+	private State state = State.CLOSED;
+	private int failures; // consecutive failures while closed
+	private int trips; // consecutive openings without a success in between
+	private long retryAt; // earliest time for the next request while open or probing
+
+	CircuitBreaker(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Check whether a request may be attempted, without claiming the half-open probe.
+	 */
+	synchronized boolean isAvailable() {
+		return state == State.CLOSED || System.currentTimeMillis() >= retryAt;
+	}
+
+	/**
+	 * Claim permission for a request, a half-open breaker only admits one probe at a time.
+	 */
+	synchronized boolean tryAcquire() {
+		if (state == State.CLOSED) return true;
+
+		long now = System.currentTimeMillis();
+		if (now < retryAt) return false;
+
+		if (state == State.OPEN) {
+			transition(State.HALF_OPEN, "probing");
+		}
+
+		retryAt = now + PROBE_TIMEOUT_MS; // keep other requests away until the probe completes or times out
+		return true;
+	}
+
+	synchronized void recordSuccess() {
+		failures = 0;
+		trips = 0;
+
+		if (state != State.CLOSED) {
+			transition(State.CLOSED, "service recovered");
+		}
+	}
+
+	synchronized void recordFailure(int failureThreshold) {
+		if (state == State.OPEN) return; // a request that started before the breaker opened
+		if (state == State.CLOSED && ++failures < failureThreshold) return;
+
+		long cooldown = Math.min(MAX_COOLDOWN_MS, BASE_COOLDOWN_MS << Math.min(trips, 16));
+		cooldown += (long) (cooldown * JITTER * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+		trips++;
+		retryAt = System.currentTimeMillis() + cooldown;
+
+		String reason = state == State.CLOSED ? failures + " consecutive failures" : "failed probe";
+		transition(State.OPEN, String.format("skipping it for %d s after %s", cooldown / 1000, reason));
+		failures = 0;
+	}
+
+	/**
+	 * Record a request that was abandoned without an outcome, e.g. cancelled after losing a hedge. A half-open breaker
+	 * admits the next probe right away instead of waiting for the probe timeout.
+	 */
+	synchronized void release() {
+		if (state == State.HALF_OPEN) {
+			retryAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Get the milliseconds until the next request is allowed, 0 if it is allowed now.
+	 */
+	synchronized long getRetryDelay() {
+		return state == State.CLOSED ? 0 : Math.max(0, retryAt - System.currentTimeMillis());
+	}
+
+	private void transition(State newState, String reason) {
+		System.out.println("Circuit breaker for " + name + ": " + state + " -> " + newState + ", " + reason);
+		state = newState;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return state.toString();
+	}
+
+	private enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Hex encoding and message digests for the checksums of downloads and cached files.
+ */
+public final class Digests {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final byte[] HEX_VALUES = new byte[128];
+
+	static {
+		Arrays.fill(HEX_VALUES, (byte) -1);
+
+		for (int i = 0; i < 16; i++) {
+			HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+			HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+		}
+	}
+
+	private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> newDigest("SHA-1"));
+
+	/**
+	 * Get this thread's SHA-1 digest, reset for a new computation.
+	 *
+	 * <p>The instance is shared with other callers on the same thread, so it must be used up before anything else
+	 * that could hash runs, e.g. not be kept across downloads. Use {@link #newDigest} for that.
+	 */
+	public static MessageDigest sha1() {
+		MessageDigest digest = SHA1.get();
+		digest.reset();
+		return digest;
+	}
+
+	public static MessageDigest newDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Something has gone really wrong", e);
+		}
+	}
+
+	/**
+	 * Encode bytes as lower case hex.
+	 */
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Decode hex in either case.
+	 *
+	 * @throws IllegalArgumentException if hex has an odd length or contains other characters
+	 */
+	public static byte[] fromHex(CharSequence hex) {
+		if (hex.length() % 2 != 0) throw new IllegalArgumentException("Odd length hex string: " + hex);
+
+		byte[] bytes = new byte[hex.length() / 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			int high = hexValue(hex.charAt(i * 2));
+			int low = hexValue(hex.charAt(i * 2 + 1));
+
+			if (high < 0 || low < 0) throw new IllegalArgumentException("Invalid hex string: " + hex);
+
+			bytes[i] = (byte) (high << 4 | low);
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Compare two hex encoded hashes ignoring case, in time depending only on their length.
+	 *
+	 * @return false if either is null, contains non-hex characters or they differ
+	 */
+	public static boolean hexEquals(String a, String b) {
+		if (a == null || b == null || a.length() != b.length()) return false;
+
+		int diff = 0;
+
+		for (int i = 0; i < a.length(); i++) {
+			int valueA = hexValue(a.charAt(i));
+			int valueB = hexValue(b.charAt(i));
+
+			diff |= valueA ^ valueB | valueA >>> 31; // a negative value marks an invalid character
+		}
+
+		return diff == 0;
+	}
+
+	/**
+	 * Check whether s is a hex encoded SHA-1 in either case, e.g. before using it as a file name.
+	 */
+	public static boolean isSha1(String s) {
+		if (s == null || s.length() != 40) return false;
+
+		for (int i = 0; i < s.length(); i++) {
+			if (hexValue(s.charAt(i)) < 0) return false;
+		}
+
+		return true;
+	}
+
+	private static int hexValue(char c) {
+		return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+	}
+
+	private Digests() {
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a batch of downloads over a bounded pool of worker threads.
+ *
+ * <p>The first failing task aborts the batch: remaining tasks are cancelled and the failure is rethrown from
+ * {@link #run()}.
+ */
+public final class DownloadScheduler {
+	public static final int DEFAULT_THREADS = 4;
+	public static final int MAX_THREADS = 32;
+
+	private static int threads = DEFAULT_THREADS;
+
+	private final List<Task> tasks = new ArrayList<>();
+
+	/**
+	 * Configure the number of concurrent downloads, 1 disables parallel downloading.
+	 */
+	public static void setThreads(int threads) {
+		if (threads < 1 || threads > MAX_THREADS) {
+			throw new IllegalArgumentException(String.format("Thread count must be between 1 and %d, got %d", MAX_THREADS, threads));
+		}
+
+		DownloadScheduler.threads = threads;
+	}
+
+	public static int getThreads() {
+		return threads;
+	}
+
+	public void add(Task task) {
+		tasks.add(task);
+	}
+
+	public void run() throws IOException {
+		if (tasks.isEmpty()) return;
+
+		int poolSize = Math.min(threads, tasks.size());
+
+		if (poolSize == 1) {
+			for (Task task : tasks) {
+				task.run();
+			}
+
+			return;
+		}
+
+		AtomicInteger threadId = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, r -> {
+			Thread thread = new Thread(r, "Download Worker #" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+			List<Future<Void>> futures = new ArrayList<>(tasks.size());
+
+			for (Task task : tasks) {
+				futures.add(completionService.submit(() -> {
+					task.run();
+					return null;
+				}));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					completionService.take().get();
+				} catch (ExecutionException e) {
+					futures.forEach(future -> future.cancel(true));
+					Throwable cause = e.getCause();
+
+					if (cause instanceof IOException) throw (IOException) cause;
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof Error) throw (Error) cause;
+
+					throw new IOException(cause);
+				} catch (InterruptedException e) {
+					futures.forEach(future -> future.cancel(true));
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while downloading", e);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public interface Task {
+		void run() throws IOException;
+	}
+}
@@ -17,71 +17,313 @@
 package tv.banko.gamersedition.installer.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import mjson.Json;
 
 public final class FabricService {
-	private static int activeIndex = 0; // index into INSTANCES or -1 if set to a fixed service
+	private static final double UNHEALTHY_ERROR_RATE = 0.5;
+	private static final int FALLBACK_LATENCY_PENALTY = 2; // fallbacks have limited throughput, only prefer them if considerably faster
+	private static final double HEDGE_PERCENTILE = 0.9;
+	private static final long DEFAULT_HEDGE_DELAY_MS = 1000;
+	private static final long MIN_HEDGE_DELAY_MS = 100;
+	private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "Fabric Service Request");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final Map<String, Object> DOWNLOAD_LOCKS = new ConcurrentHashMap<>();
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
 	private static FabricService fixedService;
+	private static volatile FabricService preferredService = null;
+	private static boolean hedging = false;
+	private static int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
 
 	private final String meta;
 	private final String maven;
+	private final ServiceStats stats = new ServiceStats();
+	private final CircuitBreaker circuitBreaker;
+	private final AtomicBoolean probing = new AtomicBoolean();
 
 	/**
 	 * Query Fabric Meta path and decode as JSON.
 	 */
 	public static Json queryMetaJson(String path) throws IOException {
-		return invokeWithFallbacks((service, arg) -> Json.read(Utils.readString(new URL(service.meta + arg))), path);
+		return readMeta(path, is -> Json.read(Utils.readString(is)));
+	}
+
+	/**
+	 * Query Fabric Meta path and read the response.
+	 */
+	public static <R> R readMeta(String path, StreamReader<R> reader) throws IOException {
+		return queryCached("meta/" + path, service -> service.meta + path, reader);
 	}
 
 	/**
 	 * Query and decode JSON from url, substituting Fabric Maven with fallbacks or overrides.
 	 */
 	public static Json queryJsonSubstitutedMaven(String url) throws IOException {
+		return readSubstitutedMaven(url, is -> Json.read(Utils.readString(is)));
+	}
+
+	/**
+	 * Query url and read the response, substituting Fabric Maven with fallbacks or overrides.
+	 */
+	public static <R> R readSubstitutedMaven(String url, StreamReader<R> reader) throws IOException {
 		if (!url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
-			return Json.read(Utils.readString(new URL(url)));
+			try (InputStream is = MetadataCache.open(new URL(url))) {
+				return reader.read(is);
+			}
 		}
 
 		String path = url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
 
-		return invokeWithFallbacks((service, arg) -> Json.read(Utils.readString(new URL(service.maven + arg))), path);
+		return queryCached("maven/" + path, service -> service.maven + path, reader);
 	}
 
 	/**
-	 * Download url to file, substituting Fabric Maven with fallbacks or overrides.
+	 * Query the SHA-1 the Maven repository publishes next to url, substituting Fabric Maven with fallbacks or overrides.
 	 */
-	public static void downloadSubstitutedMaven(String url, Path out) throws IOException {
-		if (!url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
-			Utils.downloadFile(new URL(url), out);
+	public static String querySha1SubstitutedMaven(String url) throws IOException {
+		String content = readSubstitutedMaven(url + ".sha1", Utils::readString);
+
+		// some repositories append the file name after the hash
+		String sha1 = content.trim().split("\\s+", 2)[0];
+
+		if (!Digests.isSha1(sha1)) {
+			throw new IOException("Invalid SHA-1 for " + url + ": " + sha1);
+		}
+
+		return sha1;
+	}
+
+	/**
+	 * Query a document through the {@link MetadataCache}, only falling back to a stale copy if all services failed.
+	 *
+	 * @param key identifies the document independent of the service
+	 */
+	private static <R> R queryCached(String key, Function<FabricService, String> urlFactory, StreamReader<R> reader) throws IOException {
+		try {
+			return queryWithFallbacks((service, arg) -> {
+				try (InputStream is = MetadataCache.open(new URL(urlFactory.apply(service)), arg, false)) {
+					return reader.read(is);
+				}
+			}, key);
+		} catch (IOException e) {
+			if (e instanceof HttpTransport.StatusException && !((HttpTransport.StatusException) e).isServerError()) throw e;
+
+			try (InputStream is = MetadataCache.openStale(key)) {
+				if (is == null) throw e;
+
+				return reader.read(is);
+			}
+		}
+	}
+
+	/**
+	 * Download url to file, substituting Fabric Maven with fallbacks or overrides and serving it from the
+	 * {@link ArtifactCache} where possible.
+	 *
+	 * @param sha1 expected SHA-1 of the file or null if unknown
+	 */
+	public static void downloadSubstitutedMaven(String url, Path out, String sha1) throws IOException {
+		downloadSubstitutedMaven(url, out, sha1, null);
+	}
+
+	/**
+	 * Download url to file, substituting Fabric Maven with fallbacks or overrides and serving it from the
+	 * {@link ArtifactCache} where possible. The hashes are checked while downloading, a mirror serving a mismatching
+	 * file counts as failed. Files served from the cache or an {@link OfflinePack} are checked against the same hashes.
+	 *
+	 * @param sha1 expected SHA-1 of the file or null if unknown
+	 * @param sha256 expected SHA-256 of the file or null if unknown
+	 */
+	public static void downloadSubstitutedMaven(String url, Path out, String sha1, String sha256) throws IOException {
+		if (OfflinePack.extract(getPackKey(url), out, sha1, sha256) != null) {
+			ProgressTracker.reportLocalBytes(Files.size(out));
 			return;
 		}
 
-		String path = url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
+		ArtifactCache cache = ArtifactCache.get();
+
+		if (cache == null) {
+			download(url, out, sha1, sha256, null);
+			return;
+		}
 
-		invokeWithFallbacks((service, arg) -> {
-			Utils.downloadFile(new URL(service.maven + arg), out);
-			return null;
-		}, path);
+		// concurrent installs needing the same artifact wait for the first download and are then served by the cache
+		synchronized (DOWNLOAD_LOCKS.computeIfAbsent(getCacheKey(url), key -> new Object())) {
+			download(url, out, sha1, sha256, cache);
+		}
 	}
 
+	private static void download(String url, Path out, String sha1, String sha256, ArtifactCache cache) throws IOException {
+		String cacheKey = getCacheKey(url);
+
+		if (cache != null) {
+			try {
+				if (cache.fetch(cacheKey, sha1, sha256, out)) {
+					Metrics.increment("artifact_cache_hit");
+					ProgressTracker.reportLocalBytes(Files.size(out));
+					return;
+				}
+
+				Metrics.increment("artifact_cache_miss");
+			} catch (IOException e) {
+				System.out.println("Failed to read " + cacheKey + " from the artifact cache: " + e);
+			}
+		}
+
+		String actualSha1;
+
+		if (!url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
+			actualSha1 = Utils.downloadFile(new URL(url), out, sha1, sha256);
+		} else {
+			String path = url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
+
+			actualSha1 = invokeWithFallbacks((service, arg) -> Utils.downloadFile(new URL(service.maven + arg), out, sha1, sha256), path);
+		}
+
+		if (cache != null) {
+			try {
+				cache.store(cacheKey, out, actualSha1);
+			} catch (IOException e) {
+				System.out.println("Failed to add " + cacheKey + " to the artifact cache: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Get the key a file is requested by, shared with {@link #queryCached} so an {@link OfflinePack} serves both.
+	 */
+	public static String getPackKey(String url) {
+		if (url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
+			return "maven/" + url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
+		}
+
+		return url;
+	}
+
+	/**
+	 * Key artifacts by their Maven path so the same artifact is shared between mirrors.
+	 */
+	private static String getCacheKey(String url) throws MalformedURLException {
+		if (url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
+			return url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
+		}
+
+		URL parsed = new URL(url);
+		return parsed.getHost() + parsed.getPath();
+	}
+
+	/**
+	 * Invoke handler with the services in order of preference until one succeeds.
+	 */
 	private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, A arg) throws IOException {
 		if (fixedService != null) return handler.apply(fixedService, arg);
 
-		int index = activeIndex;
+		return invokeInOrder(handler, arg, getAvailableServices(), false, null);
+	}
+
+	/**
+	 * Like {@link #invokeWithFallbacks}, but for small idempotent queries: latencies are recorded and with hedging
+	 * enabled a second service is queried if the preferred one is slower than usual. Fallbacks without latency samples
+	 * are sent the query as well, see {@link #probeUnmeasured}.
+	 */
+	private static <A, R> R queryWithFallbacks(Handler<A, R> handler, A arg) throws IOException {
+		if (fixedService != null) return handler.apply(fixedService, arg);
+
+		List<FabricService> services = getAvailableServices();
+		probeUnmeasured(handler, arg, services);
+
+		if (!hedging || services.size() < 2) {
+			return invokeInOrder(handler, arg, services, true, null);
+		}
+
+		FabricService primary = services.get(0);
+		FabricService secondary = services.get(1);
+		CompletionService<R> completionService = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+		List<Future<R>> futures = new ArrayList<>(2);
 		IOException exc = null;
+		boolean hedged = false;
+		int pending = 1;
 
-		do {
-			FabricService service = Reference.FABRIC_SERVICES[index];
+		futures.add(completionService.submit(() -> primary.invoke(handler, arg, true)));
 
-			try {
-				R ret = handler.apply(service, arg);
-				activeIndex = index;
+		try {
+			while (pending > 0) {
+				Future<R> done = hedged ? completionService.take() : completionService.poll(primary.getHedgeDelay(), TimeUnit.MILLISECONDS);
+
+				if (done == null) {
+					System.out.println("Service " + primary + " is slow, hedging with " + secondary);
+					Metrics.increment("hedge");
+				} else {
+					pending--;
+
+					try {
+						return done.get(); // the slower request is cancelled below
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+						if (!(cause instanceof IOException)) throw new RuntimeException(cause);
+
+						System.out.println("Hedged service request failed: " + cause);
+
+						if (exc == null) {
+							exc = (IOException) cause;
+						} else {
+							exc.addSuppressed(cause);
+						}
+					}
+				}
+
+				if (!hedged) {
+					hedged = true;
+					pending++;
+					futures.add(completionService.submit(() -> secondary.invoke(handler, arg, true)));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while querying Fabric services");
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
 
-				return ret;
+		return invokeInOrder(handler, arg, services.subList(2, services.size()), true, exc);
+	}
+
+	private static <A, R> R invokeInOrder(Handler<A, R> handler, A arg, List<FabricService> services, boolean timed, IOException exc) throws IOException {
+		for (FabricService service : services) {
+			try {
+				return service.invoke(handler, arg, timed);
 			} catch (IOException e) {
 				System.out.println("service "+service+" failed: "+e);
+				Metrics.increment("retry_fallback");
 
 				if (exc == null) {
 					exc = e;
@@ -89,17 +331,161 @@ public final class FabricService {
 					exc.addSuppressed(e);
 				}
 			}
-
-			index = (index + 1) % Reference.FABRIC_SERVICES.length;
-		} while (index != activeIndex);
+		}
 
 		throw exc;
 	}
 
+	/**
+	 * Send the query to the fallbacks without latency samples in the background and discard the results. Only the
+	 * preferred service is queried while it keeps answering, so a faster fallback would otherwise never be measured
+	 * and preferred.
+	 */
+	private static <A, R> void probeUnmeasured(Handler<A, R> handler, A arg, List<FabricService> services) {
+		for (FabricService service : services.subList(1, services.size())) {
+			if (service.stats.getMeanLatency() >= 0 || !service.probing.compareAndSet(false, true)) continue;
+
+			Metrics.increment("probe");
+			HEDGE_EXECUTOR.execute(() -> {
+				try {
+					service.invoke(handler, arg, true);
+				} catch (IOException e) {
+					System.out.println("Probing service " + service + " failed: " + e);
+				} finally {
+					service.probing.set(false);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Invoke handler with this service, recording the outcome and optionally the latency.
+	 */
+	private <A, R> R invoke(Handler<A, R> handler, A arg, boolean timed) throws IOException {
+		if (!circuitBreaker.tryAcquire()) {
+			throw new IOException("Service " + this + " is unavailable for another " + circuitBreaker.getRetryDelay() + " ms");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			R ret = handler.apply(this, arg);
+
+			if (timed) {
+				stats.recordSuccess(System.nanoTime() - start);
+			}
+
+			circuitBreaker.recordSuccess();
+			return ret;
+		} catch (HttpTransport.StatusException e) {
+			if (e.isServerError()) {
+				stats.recordFailure();
+				circuitBreaker.recordFailure(failureThreshold);
+			} else {
+				circuitBreaker.recordSuccess(); // the service is fine, the requested file isn't
+			}
+
+			throw e;
+		} catch (IOException e) {
+			if (isCancellation(e)) {
+				// the request lost a hedge and was cancelled, that says nothing about the service
+				circuitBreaker.release();
+			} else {
+				stats.recordFailure();
+				circuitBreaker.recordFailure(failureThreshold);
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Check whether a request failed because its thread was interrupted, a timeout is a genuine failure.
+	 */
+	private static boolean isCancellation(IOException e) {
+		return Thread.currentThread().isInterrupted()
+				|| e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+	}
+
+	private long getHedgeDelay() {
+		long percentile = stats.getLatencyPercentile(HEDGE_PERCENTILE);
+		if (percentile < 0) return DEFAULT_HEDGE_DELAY_MS;
+
+		return Math.max(MIN_HEDGE_DELAY_MS, Math.min(HttpTransport.TIMEOUT_MS, TimeUnit.NANOSECONDS.toMillis(percentile)));
+	}
+
+	/**
+	 * Get the services in order of preference, skipping services with an open circuit breaker.
+	 */
+	private static List<FabricService> getAvailableServices() throws IOException {
+		List<FabricService> ret = getServicesByPreference();
+		ret.removeIf(service -> !service.circuitBreaker.isAvailable());
+
+		if (ret.isEmpty()) {
+			long retryDelay = Arrays.stream(Reference.FABRIC_SERVICES).mapToLong(service -> service.circuitBreaker.getRetryDelay()).min().orElse(0);
+			throw new IOException("All Fabric services are unavailable, retrying in " + retryDelay + " ms");
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Order the services by health and measured latency, services without measurements keep their default order until
+	 * {@link #probeUnmeasured} measured them.
+	 */
+	private static List<FabricService> getServicesByPreference() {
+		FabricService[] services = Reference.FABRIC_SERVICES;
+		Map<FabricService, Boolean> unhealthy = new IdentityHashMap<>();
+		Map<FabricService, Long> scores = new IdentityHashMap<>();
+
+		for (int i = 0; i < services.length; i++) {
+			FabricService service = services[i];
+			long latency = service.stats.getMeanLatency();
+
+			unhealthy.put(service, service.stats.getErrorRate() > UNHEALTHY_ERROR_RATE);
+			scores.put(service, latency < 0 ? Long.MAX_VALUE : i == 0 ? latency : latency * FALLBACK_LATENCY_PENALTY);
+		}
+
+		List<FabricService> ret = new ArrayList<>(Arrays.asList(services));
+		ret.sort(Comparator.comparing((FabricService service) -> unhealthy.get(service)).thenComparingLong(scores::get));
+
+		FabricService preferred = ret.get(0);
+
+		if (preferred != preferredService) {
+			if (preferredService != null) {
+				System.out.println("Preferring service " + preferred + " (" + preferred.stats + ") over " + preferredService + " (" + preferredService.stats + ")");
+			}
+
+			preferredService = preferred;
+		}
+
+		return ret;
+	}
+
 	private interface Handler<A, R> {
 		R apply(FabricService service, A arg) throws IOException;
 	}
 
+	public interface StreamReader<R> {
+		R read(InputStream is) throws IOException;
+	}
+
+	/**
+	 * Configure whether slow queries are duplicated to a second service, using whichever answers first.
+	 */
+	public static void setHedging(boolean hedging) {
+		FabricService.hedging = hedging;
+	}
+
+	/**
+	 * Configure after how many consecutive failures a service is skipped for a cool-down period.
+	 */
+	public static void setFailureThreshold(int failureThreshold) {
+		if (failureThreshold < 1) throw new IllegalArgumentException("Failure threshold must be positive, got " + failureThreshold);
+
+		FabricService.failureThreshold = failureThreshold;
+	}
+
 	/**
 	 * Configure fixed service urls, disabling fallbacks or the defaults.
 	 */
@@ -109,13 +495,13 @@ public final class FabricService {
 		if (metaUrl == null) metaUrl = Reference.DEFAULT_META_SERVER;
 		if (mavenUrl == null) mavenUrl = Reference.DEFAULT_MAVEN_SERVER;
 
-		activeIndex = -1;
 		fixedService = new FabricService(metaUrl, mavenUrl);
 	}
 
 	FabricService(String meta, String maven) {
 		this.meta = meta;
 		this.maven = maven;
+		this.circuitBreaker = new CircuitBreaker(meta + " / " + maven);
 	}
 
 	public String getMetaUrl() {
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive locks on files shared between threads and installer processes.
+ *
+ * <p>The OS lock is taken on a {@code .lock} file next to the locked file, so installers of different users sharing a
+ * directory exclude each other. The file itself is replaced by {@link Utils#writeToFile(Path, byte[])}, which would
+ * leave a lock on it behind on the old copy. Lock files are kept, deleting one while another process waits on it would
+ * let two processes hold the lock. If the lock file can't be created, e.g. in a directory that is writable but not
+ * for new files, only threads of this process are excluded.
+ *
+ * <p>Locks are advisory and only coordinate installers, the launcher doesn't take them, so against the launcher the
+ * atomic replacement is the only protection.
+ */
+public final class FileLocks {
+	private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	/**
+	 * Lock path, waiting for other threads and processes holding it.
+	 */
+	public static Lock lock(Path path) throws IOException {
+		path = canonicalize(path);
+
+		// FileChannel.lock is held per process, it has to be serialized within the JVM first
+		ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(path, p -> new ReentrantLock());
+		localLock.lock();
+
+		FileChannel channel = null;
+
+		try {
+			Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+
+			try {
+				channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				System.out.println("Warning: failed to create " + lockFile + ", not excluding other installers: " + e);
+				return new Lock(localLock, null, null);
+			}
+
+			return new Lock(localLock, channel, channel.lock());
+		} catch (IOException | RuntimeException e) {
+			if (channel != null) channel.close();
+			localLock.unlock();
+			throw e;
+		}
+	}
+
+	/**
+	 * Resolve the parent directory so different spellings of the same file share a lock, the file itself may not
+	 * exist yet.
+	 */
+	private static Path canonicalize(Path path) {
+		path = path.toAbsolutePath().normalize();
+
+		try {
+			return path.getParent().toRealPath().resolve(path.getFileName());
+		} catch (IOException e) {
+			return path;
+		}
+	}
+
+	public static final class Lock implements Closeable {
+		private final ReentrantLock localLock;
+		private final FileChannel channel; // null if only locked within the process
+		private final FileLock fileLock;
+
+		private Lock(ReentrantLock localLock, FileChannel channel, FileLock fileLock) {
+			this.localLock = localLock;
+			this.channel = channel;
+			this.fileLock = fileLock;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (channel != null) {
+					fileLock.release();
+					channel.close();
+				}
+			} finally {
+				localLock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled transport on top of the Java 11+ {@code java.net.http.HttpClient}.
+ *
+ * <p>The installer is compiled for Java 8, so the client is driven reflectively. A single client instance is shared
+ * by all requests, it keeps connections alive and multiplexes requests over HTTP/2 where the server supports it.
+ */
+final class HttpClientTransport implements HttpTransport {
+	private static final Api API = Api.load();
+
+	private final Object client;
+
+	static boolean isAvailable() {
+		return API != null;
+	}
+
+	HttpClientTransport() {
+		if (API == null) throw new IllegalStateException("java.net.http is not available");
+
+		try {
+			Object builder = API.newClientBuilder.invoke(null);
+			API.clientVersion.invoke(builder, API.http2);
+			API.clientFollowRedirects.invoke(builder, API.redirectNormal);
+			API.clientConnectTimeout.invoke(builder, Duration.ofMillis(TIMEOUT_MS));
+			client = API.clientBuild.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Failed to create HttpClient", e);
+		}
+	}
+
+	@Override
+	public Response get(URL url, Map<String, String> headers) throws IOException {
+		Object response;
+
+		try {
+			Object builder = API.newRequestBuilder.invoke(null, url.toURI());
+			API.requestTimeout.invoke(builder, Duration.ofMillis(TIMEOUT_MS));
+
+			for (Map.Entry<String, String> entry : headers.entrySet()) {
+				API.requestHeader.invoke(builder, entry.getKey(), entry.getValue());
+			}
+
+			Object request = API.requestBuild.invoke(API.requestGet.invoke(builder));
+			response = API.clientSend.invoke(client, request, API.bodyHandler);
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid url " + url, e);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+
+			if (cause instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException exc = new InterruptedIOException("Interrupted while requesting " + url);
+				exc.initCause(cause);
+				throw exc;
+			}
+
+			throw new IOException(cause);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+
+		try {
+			int status = (int) API.responseStatusCode.invoke(response);
+			Object responseHeaders = API.responseHeaders.invoke(response);
+			InputStream body = new IdleTimeoutInputStream((InputStream) API.responseBody.invoke(response));
+
+			return new Response() {
+				@Override
+				public int getStatus() {
+					return status;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public String getHeader(String name) {
+					try {
+						return ((Optional<String>) API.headersFirstValue.invoke(responseHeaders, name)).orElse(null);
+					} catch (ReflectiveOperationException e) {
+						throw new RuntimeException(e);
+					}
+				}
+
+				@Override
+				public InputStream getBody() {
+					return body;
+				}
+			};
+		} catch (ReflectiveOperationException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "java.net.http.HttpClient";
+	}
+
+	/**
+	 * HttpClient only bounds the time until the response headers arrive. This stream adds the per read timeout
+	 * HttpURLConnection has by closing the body once a read stalls for longer than {@link #TIMEOUT_MS}, the response
+	 * stream ignores interrupts.
+	 */
+	private static final class IdleTimeoutInputStream extends FilterInputStream {
+		private static final Set<IdleTimeoutInputStream> ACTIVE = ConcurrentHashMap.newKeySet();
+		private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "HTTP Read Watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		static {
+			WATCHDOG.scheduleWithFixedDelay(() -> ACTIVE.forEach(IdleTimeoutInputStream::checkIdle), 1, 1, TimeUnit.SECONDS);
+		}
+
+		private boolean reading;
+		private long readStart;
+		private boolean timedOut;
+
+		IdleTimeoutInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			beginRead();
+
+			try {
+				return super.read();
+			} finally {
+				endRead();
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			beginRead();
+
+			try {
+				return super.read(b, off, len);
+			} finally {
+				endRead();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			ACTIVE.remove(this);
+			super.close();
+		}
+
+		private synchronized void beginRead() throws IOException {
+			if (timedOut) throw new SocketTimeoutException("Read timed out");
+
+			reading = true;
+			readStart = System.nanoTime();
+			ACTIVE.add(this);
+		}
+
+		private synchronized void endRead() throws IOException {
+			reading = false;
+			ACTIVE.remove(this);
+
+			if (timedOut) {
+				throw new SocketTimeoutException("Read timed out");
+			}
+		}
+
+		private void checkIdle() {
+			synchronized (this) {
+				if (!reading || timedOut || System.nanoTime() - readStart <= TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS)) return;
+
+				timedOut = true;
+			}
+
+			try {
+				in.close(); // wakes up the blocked reader
+			} catch (IOException ignored) {
+				// the read fails either way
+			}
+		}
+	}
+
+	private static final class Api {
+		Method newClientBuilder;
+		Method clientVersion;
+		Method clientFollowRedirects;
+		Method clientConnectTimeout;
+		Method clientBuild;
+		Method clientSend;
+		Method newRequestBuilder;
+		Method requestTimeout;
+		Method requestHeader;
+		Method requestGet;
+		Method requestBuild;
+		Method responseStatusCode;
+		Method responseHeaders;
+		Method responseBody;
+		Method headersFirstValue;
+		Object http2;
+		Object redirectNormal;
+		Object bodyHandler;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		static Api load() {
+			try {
+				Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+				Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+				Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+				Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+				Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+				Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+				Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+				Class<?> bodyHandlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+				Class<?> bodyHandlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+				Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+
+				Api api = new Api();
+				api.newClientBuilder = clientClass.getMethod("newBuilder");
+				api.clientVersion = clientBuilderClass.getMethod("version", versionClass);
+				api.clientFollowRedirects = clientBuilderClass.getMethod("followRedirects", redirectClass);
+				api.clientConnectTimeout = clientBuilderClass.getMethod("connectTimeout", Duration.class);
+				api.clientBuild = clientBuilderClass.getMethod("build");
+				api.clientSend = clientClass.getMethod("send", requestClass, bodyHandlerClass);
+				api.newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+				api.requestTimeout = requestBuilderClass.getMethod("timeout", Duration.class);
+				api.requestHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+				api.requestGet = requestBuilderClass.getMethod("GET");
+				api.requestBuild = requestBuilderClass.getMethod("build");
+				api.responseStatusCode = responseClass.getMethod("statusCode");
+				api.responseHeaders = responseClass.getMethod("headers");
+				api.responseBody = responseClass.getMethod("body");
+				api.headersFirstValue = headersClass.getMethod("firstValue", String.class);
+				api.http2 = Enum.valueOf((Class) versionClass, "HTTP_2");
+				api.redirectNormal = Enum.valueOf((Class) redirectClass, "NORMAL");
+				api.bodyHandler = bodyHandlersClass.getMethod("ofInputStream").invoke(null);
+
+				return api;
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Running on Java 8
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tv.banko.gamersedition.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Minimal HTTP client abstraction used for all meta, maven and GitHub requests, see {@link Utils#getHttpTransport()}.
+ */
+public interface HttpTransport {
+	int TIMEOUT_MS = 8000;
+
+	/**
+	 * Perform a GET request, following redirects.
+	 *
+	 * <p>The body of the returned response has to be closed, reading it to the end first allows the connection to be
+	 * reused for further requests.
+	 */
+	Response get(URL url, Map<String, String> headers) throws IOException;
+
+	interface Response {
+		int getStatus();
+
+		/**
+		 * Get the first value of a response header or null if it is absent.
+		 */
+		String getHeader(String name);
+
+		InputStream getBody();
+	}
+
+	/**
+	 * Thrown for unsuccessful HTTP responses.
+	 */
+	class StatusException extends IOException {
+		public final int status;
+
+		public StatusException(URL url, int status) {
+			super("HTTP request to " + url + " failed: " + status);
+			this.status = status;
+		}
+
+		/**
+		 * Whether the response indicates a problem with the server rather than with the request, e.g. a missing file.
+		 */
+		public boolean isServerError() {
+			return status >= 500 || status == 408 || status == 429;
+		}
+	}
+}
@@ -32,4 +32,19 @@ public interface InstallerProgress {
 	void updateProgress(String text);
 
 	void error(Throwable throwable);
+
+	/**
+	 * Show a progress snapshot, called by a {@link ProgressTracker} at most {@link #getFrameRate()} times per second
+	 * from its own thread.
+	 */
+	default void updateProgress(ProgressEvent event) {
+		updateProgress(event.toString());
+	}
+
+	/**
+	 * Get how many progress snapshots per second are shown.
+	 */
+	default int getFrameRate() {
+		return 1;
+	}
 }
@@ -16,17 +16,27 @@
 
 package tv.banko.gamersedition.installer.util;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import mjson.Json;
 
 public class LauncherMeta {
 	private static LauncherMeta launcherMeta = null;
 
-	public static LauncherMeta getLauncherMeta() throws IOException {
+	public static synchronized LauncherMeta getLauncherMeta() throws IOException {
 		if (launcherMeta == null) {
 			launcherMeta = load();
 		}
@@ -35,28 +45,101 @@ public class LauncherMeta {
 	}
 
 	private static LauncherMeta load() throws IOException {
-		List<Version> versions = new ArrayList<>();
-		versions.addAll(getVersionsFromUrl(Reference.MINECRAFT_LAUNCHER_MANIFEST));
-		versions.addAll(getVersionsFromUrl(Reference.EXPERIMENTAL_LAUNCHER_MANIFEST));
+		// the manifests are independent, fetch the experimental one alongside the main one
+		CompletableFuture<List<Version>> experimental = CompletableFuture.supplyAsync(() -> {
+			try {
+				return getVersionsFromUrl(Reference.EXPERIMENTAL_LAUNCHER_MANIFEST);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+
+		List<Version> versions = new ArrayList<>(getVersionsFromUrl(Reference.MINECRAFT_LAUNCHER_MANIFEST));
+
+		try {
+			versions.addAll(experimental.join());
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
 
 		return new LauncherMeta(versions);
 	}
 
 	private static List<Version> getVersionsFromUrl(String url) throws IOException {
-		Json json = FabricService.queryJsonSubstitutedMaven(url);
+		return FabricService.readSubstitutedMaven(url, LauncherMeta::readVersions);
+	}
+
+	/**
+	 * Stream the versions out of a manifest, only keeping the fields {@link Version} needs.
+	 */
+	private static List<Version> readVersions(InputStream is) throws IOException {
+		List<Version> versions = new ArrayList<>();
+
+		try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)))) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("versions")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginArray();
 
-		List<Version> versions = json.at("versions").asJsonList()
-				.stream()
-				.map(Version::new)
-				.collect(Collectors.toList());
+				while (reader.hasNext()) {
+					versions.add(readVersion(reader));
+				}
+
+				reader.endArray();
+			}
+
+			reader.endObject();
+		} catch (IllegalStateException | MalformedJsonException e) {
+			throw new IOException("Invalid version manifest", e);
+		}
 
 		return versions;
 	}
 
+	private static Version readVersion(JsonReader reader) throws IOException {
+		String id = null;
+		String url = null;
+
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				id = reader.nextString();
+				break;
+			case "url":
+				url = reader.nextString();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+
+		if (id == null || url == null) {
+			throw new IOException("Version manifest entry without id or url");
+		}
+
+		return new Version(id, url);
+	}
+
 	public final List<Version> versions;
+	private final Map<String, Version> versionsById;
 
 	public LauncherMeta(List<Version> versions) {
 		this.versions = versions;
+		this.versionsById = new HashMap<>(versions.size() * 2);
+
+		for (Version version : versions) {
+			versionsById.putIfAbsent(version.id, version); // the first manifest wins, like the previous linear search
+		}
 	}
 
 	public static class Version {
@@ -66,8 +149,12 @@ public class LauncherMeta {
 		private VersionMeta versionMeta = null;
 
 		public Version(Json json) {
-			this.id = json.at("id").asString();
-			this.url = json.at("url").asString();
+			this(json.at("id").asString(), json.at("url").asString());
+		}
+
+		public Version(String id, String url) {
+			this.id = id;
+			this.url = url;
 		}
 
 		public VersionMeta getVersionMeta() throws IOException {
@@ -81,6 +168,6 @@ public class LauncherMeta {
 	}
 
 	public Version getVersion(String version) {
-		return versions.stream().filter(v -> v.id.equals(version)).findFirst().orElse(null);
+		return versionsById.get(version);
 	}
 }
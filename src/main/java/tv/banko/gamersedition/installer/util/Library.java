@@ -25,17 +25,35 @@ public class Library {
 	public final String name;
 	public final String url;
 	public final Path inputPath;
+	/**
+	 * Expected SHA-1 of the artifact, or null if the profile doesn't publish one.
+	 */
+	public final String sha1;
+	/**
+	 * Expected SHA-256 of the artifact, or null if the profile doesn't publish one.
+	 */
+	public final String sha256;
+	/**
+	 * Expected size of the artifact in bytes, or -1 if unknown.
+	 */
+	public final long size;
 
 	public Library(String name, String url, Path inputPath) {
 		this.name = name;
 		this.url = url;
 		this.inputPath = inputPath;
+		this.sha1 = null;
+		this.sha256 = null;
+		this.size = -1;
 	}
 
 	public Library(Json json) {
 		name = json.at("name").asString();
 		url = json.at("url").asString();
 		inputPath = null;
+		sha1 = json.has("sha1") ? json.at("sha1").asString() : null;
+		sha256 = json.has("sha256") ? json.at("sha256").asString() : null;
+		size = json.has("size") ? json.at("size").asLong() : -1;
 	}
 
 	public String getURL() {
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk backed cache for metadata documents such as the Fabric Meta responses, launcher manifests and version.json.
+ *
+ * <p>Documents younger than the TTL are served without a request. Older ones are revalidated with
+ * {@code If-None-Match} / {@code If-Modified-Since}, so unchanged documents only cost a 304 response. If the request
+ * fails, the cached copy is served regardless of its age, allowing repeated runs without a connection.
+ */
+public final class MetadataCache {
+	public static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+	private static boolean enabled = true;
+	private static MetadataCache instance;
+
+	private final Path dir;
+	private final long ttl;
+
+	/**
+	 * Read url as a string, through the cache if it is enabled.
+	 */
+	public static String readString(URL url) throws IOException {
+		try (InputStream is = open(url)) {
+			return Utils.readString(is);
+		}
+	}
+
+	/**
+	 * Open url for reading through the cache if it is enabled, serving a stale copy if the server can't be reached.
+	 */
+	public static InputStream open(URL url) throws IOException {
+		return open(url, url.toString(), true, false);
+	}
+
+	/**
+	 * Read url as a string like {@link #readString(URL)}, but revalidate a cached copy regardless of its age.
+	 */
+	public static String readRevalidated(URL url) throws IOException {
+		try (InputStream is = openRevalidated(url)) {
+			return Utils.readString(is);
+		}
+	}
+
+	/**
+	 * Open url like {@link #open(URL)}, but revalidate a cached copy regardless of its age. For documents that have to
+	 * match a file fetched from a moving URL, such as version.json and the mod jar of the latest release, which would
+	 * otherwise disagree for up to a TTL after a release.
+	 */
+	public static InputStream openRevalidated(URL url) throws IOException {
+		return open(url, url.toString(), true, true);
+	}
+
+	/**
+	 * Open url for reading through the cache if it is enabled.
+	 *
+	 * @param key identifies the document independent of the mirror it is fetched from
+	 * @param offlineFallback whether to serve a stale copy if the server can't be reached, see {@link #openStale}
+	 */
+	static InputStream open(URL url, String key, boolean offlineFallback) throws IOException {
+		return open(url, key, offlineFallback, false);
+	}
+
+	private static InputStream open(URL url, String key, boolean offlineFallback, boolean revalidate) throws IOException {
+		InputStream packed = OfflinePack.open(key);
+		if (packed != null) return packed;
+
+		MetadataCache cache = get();
+
+		return cache != null ? cache.openCached(url, key, offlineFallback, revalidate ? 0 : cache.ttl) : Utils.openUrl(url);
+	}
+
+	/**
+	 * Open the cached copy of a document regardless of its age, or return null if there is none.
+	 */
+	static InputStream openStale(String key) throws IOException {
+		MetadataCache cache = get();
+		if (cache == null) return null;
+
+		Entry entry = cache.getEntry(key);
+		if (!entry.exists()) return null;
+
+		System.out.println(String.format("Warning: using cached %s from %d minutes ago", key, TimeUnit.MILLISECONDS.toMinutes(entry.getAge())));
+		Metrics.increment("metadata_cache_stale");
+		return Files.newInputStream(entry.body);
+	}
+
+	private static synchronized MetadataCache get() {
+		if (!enabled) return null;
+
+		if (instance == null) {
+			instance = new MetadataCache(Utils.findDefaultCacheDir(), DEFAULT_TTL_MS);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Configure the cache directory and for how many milliseconds documents are used without revalidation.
+	 */
+	public static synchronized void configure(Path cacheDir, long ttl) {
+		if (ttl < 0) throw new IllegalArgumentException("TTL must not be negative, got " + ttl);
+
+		enabled = true;
+		instance = new MetadataCache(cacheDir, ttl);
+	}
+
+	public static synchronized void disable() {
+		enabled = false;
+		instance = null;
+	}
+
+	private MetadataCache(Path cacheDir, long ttl) {
+		this.dir = cacheDir.resolve("meta");
+		this.ttl = ttl;
+	}
+
+	private Entry getEntry(String key) throws IOException {
+		String hash = Digests.toHex(Digests.sha1().digest(key.getBytes(StandardCharsets.UTF_8)));
+		return new Entry(key, dir.resolve(hash + ".body"), dir.resolve(hash + ".properties"));
+	}
+
+	/**
+	 * @param maxAge age up to which a cached copy is used without revalidation, 0 to always revalidate
+	 */
+	private InputStream openCached(URL url, String key, boolean offlineFallback, long maxAge) throws IOException {
+		Entry entry = getEntry(key);
+		boolean cached = entry.exists();
+
+		if (cached && entry.getAge() < maxAge) {
+			Metrics.increment("metadata_cache_hit");
+			return Files.newInputStream(entry.body);
+		}
+
+		Map<String, String> headers = new HashMap<>();
+
+		if (cached) {
+			if (entry.properties.getProperty("etag") != null) headers.put("If-None-Match", entry.properties.getProperty("etag"));
+			if (entry.properties.getProperty("lastModified") != null) headers.put("If-Modified-Since", entry.properties.getProperty("lastModified"));
+		}
+
+		try {
+			HttpTransport.Response response = Utils.getHttpTransport().get(Utils.substituteRelease(url), headers);
+			int status = response.getStatus();
+
+			if (status == 304 && cached) {
+				Utils.discard(response);
+				Metrics.increment("metadata_cache_revalidated");
+				entry.properties.setProperty("fetched", Long.toString(System.currentTimeMillis()));
+				entry.writeProperties();
+
+				return Files.newInputStream(entry.body);
+			} else if (status < 200 || status >= 300) {
+				Utils.discard(response);
+				throw new HttpTransport.StatusException(url, status);
+			}
+
+			Files.createDirectories(dir);
+			Path tmp = Files.createTempFile(dir, entry.body.getFileName().toString(), ".tmp");
+
+			try {
+				try (InputStream is = response.getBody()) {
+					Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				Utils.moveAtomically(tmp, entry.body);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+
+			entry.properties.clear();
+			entry.properties.setProperty("key", key);
+			entry.properties.setProperty("fetched", Long.toString(System.currentTimeMillis()));
+			if (response.getHeader("ETag") != null) entry.properties.setProperty("etag", response.getHeader("ETag"));
+			if (response.getHeader("Last-Modified") != null) entry.properties.setProperty("lastModified", response.getHeader("Last-Modified"));
+			entry.writeProperties();
+
+			return Files.newInputStream(entry.body);
+		} catch (IOException e) {
+			// a missing document is a valid answer, only fall back to the cache if the server couldn't be reached
+			if (!offlineFallback || !cached || e instanceof HttpTransport.StatusException && !((HttpTransport.StatusException) e).isServerError()) {
+				throw e;
+			}
+
+			System.out.println(String.format("Warning: using cached %s from %d minutes ago, the request failed: %s", key, TimeUnit.MILLISECONDS.toMinutes(entry.getAge()), e));
+			Metrics.increment("metadata_cache_stale");
+			return Files.newInputStream(entry.body);
+		}
+	}
+
+	private static final class Entry {
+		final Path body;
+		final Path info;
+		final Properties properties = new Properties();
+
+		Entry(String key, Path body, Path info) throws IOException {
+			this.body = body;
+			this.info = info;
+
+			if (Files.isRegularFile(info)) {
+				try (InputStream is = Files.newInputStream(info)) {
+					properties.load(is);
+				}
+
+				if (!key.equals(properties.getProperty("key"))) properties.clear();
+			}
+		}
+
+		boolean exists() {
+			return properties.containsKey("fetched") && Files.isRegularFile(body);
+		}
+
+		long getAge() {
+			return Math.max(0, System.currentTimeMillis() - Long.parseLong(properties.getProperty("fetched", "0")));
+		}
+
+		void writeProperties() throws IOException {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			properties.store(os, null);
+			Utils.writeToFile(info, os.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the latency and size of every request of another transport in the {@link Metrics}, per host.
+ */
+final class MeteredTransport implements HttpTransport {
+	private final HttpTransport parent;
+
+	MeteredTransport(HttpTransport parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public Response get(URL url, Map<String, String> headers) throws IOException {
+		String host = url.getHost();
+		long start = System.nanoTime();
+		Response response;
+
+		try {
+			response = parent.get(url, headers);
+		} catch (IOException | RuntimeException e) {
+			Metrics.recordFailure(host);
+			throw e;
+		}
+
+		if (response.getStatus() >= 500) Metrics.recordFailure(host);
+
+		InputStream body = new MeteredInputStream(response.getBody(), host, start);
+
+		return new Response() {
+			@Override
+			public int getStatus() {
+				return response.getStatus();
+			}
+
+			@Override
+			public String getHeader(String name) {
+				return response.getHeader(name);
+			}
+
+			@Override
+			public InputStream getBody() {
+				return body;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return parent.toString();
+	}
+
+	private static final class MeteredInputStream extends FilterInputStream {
+		private final String host;
+		private final long start;
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private long bytes;
+
+		MeteredInputStream(InputStream in, String host, long start) {
+			super(in);
+			this.host = host;
+			this.start = start;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ret = super.read();
+			if (ret >= 0) bytes++;
+
+			return ret;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = super.read(b, off, len);
+			if (ret > 0) bytes += ret;
+
+			return ret;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long ret = super.skip(n);
+			bytes += ret;
+
+			return ret;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed.compareAndSet(false, true)) {
+				Metrics.recordRequest(host, System.nanoTime() - start, bytes);
+			}
+
+			super.close();
+		}
+	}
+}
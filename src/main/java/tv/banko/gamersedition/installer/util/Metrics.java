@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Timings and counters of a run: install phases, HTTP requests per host and events such as retries and cache hits.
+ *
+ * <p>Everything is recorded with lock-free counters. {@link #writeReports} writes them as JSON and optionally in the
+ * Prometheus text format, Main calls it when the process exits.
+ */
+public final class Metrics {
+	/**
+	 * Upper bounds of the latency histogram buckets in milliseconds, followed by an unbounded bucket.
+	 */
+	private static final long[] BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+	private static final long[] BUCKETS_NS = Arrays.stream(BUCKETS_MS).map(TimeUnit.MILLISECONDS::toNanos).toArray();
+	private static final String PREFIX = "gamers_edition_installer_";
+
+	private static final ConcurrentMap<String, Histogram> PHASES = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, Histogram> REQUESTS = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, LongAdder> BYTES = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, LongAdder> FAILURES = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+	private static Path jsonReport;
+	private static Path prometheusReport;
+
+	/**
+	 * Configure where {@link #writeReports} writes to.
+	 *
+	 * @param json JSON file, or null to not write JSON
+	 * @param prometheus Prometheus text format file, or null to only write JSON
+	 */
+	public static synchronized void setReports(Path json, Path prometheus) {
+		jsonReport = json;
+		prometheusReport = prometheus;
+	}
+
+	/**
+	 * Start timing an install phase, the time is recorded when the timer is closed.
+	 */
+	public static Timer time(String phase) {
+		return new Timer(PHASES.computeIfAbsent(phase, name -> new Histogram()));
+	}
+
+	/**
+	 * Record a HTTP request to host, from sending it until its body was closed.
+	 */
+	static void recordRequest(String host, long nanos, long bytes) {
+		REQUESTS.computeIfAbsent(host, name -> new Histogram()).record(nanos);
+		BYTES.computeIfAbsent(host, name -> new LongAdder()).add(bytes);
+	}
+
+	/**
+	 * Record a HTTP request to host that failed without a response or with a server error.
+	 */
+	static void recordFailure(String host) {
+		FAILURES.computeIfAbsent(host, name -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Count an event such as a retry or a cache hit.
+	 */
+	public static void increment(String event) {
+		COUNTERS.computeIfAbsent(event, name -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Write the configured reports and print the phase timings, nothing is written if nothing was recorded.
+	 */
+	public static synchronized void writeReports() {
+		if (PHASES.isEmpty() && REQUESTS.isEmpty()) return;
+
+		if (!PHASES.isEmpty()) {
+			StringBuilder summary = new StringBuilder("Phase timings:");
+			new TreeMap<>(PHASES).forEach((phase, histogram) -> summary.append(' ').append(phase).append(' ').append(TimeUnit.NANOSECONDS.toMillis(histogram.sum.sum())).append(" ms"));
+			System.out.println(summary);
+		}
+
+		try {
+			if (jsonReport != null) {
+				Utils.writeToFile(jsonReport, new GsonBuilder().setPrettyPrinting().create().toJson(toJson()));
+				System.out.println("Wrote metrics to " + jsonReport);
+			}
+
+			if (prometheusReport != null) {
+				Utils.writeToFile(prometheusReport, toPrometheus());
+				System.out.println("Wrote Prometheus metrics to " + prometheusReport);
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to write the metrics: " + e);
+		}
+	}
+
+	static JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("time", Utils.ISO_8601.format(new Date()));
+
+		JsonObject phases = new JsonObject();
+		new TreeMap<>(PHASES).forEach((phase, histogram) -> phases.add(phase, histogram.toJson()));
+		json.add("phases", phases);
+
+		JsonObject requests = new JsonObject();
+
+		new TreeMap<>(REQUESTS).forEach((host, histogram) -> {
+			JsonObject request = histogram.toJson();
+			request.addProperty("bytes", get(BYTES, host));
+			request.addProperty("failures", get(FAILURES, host));
+			requests.add(host, request);
+		});
+
+		// hosts that only failed
+		new TreeMap<>(FAILURES).forEach((host, failures) -> {
+			if (requests.has(host)) return;
+
+			JsonObject request = new JsonObject();
+			request.addProperty("failures", failures.sum());
+			requests.add(host, request);
+		});
+
+		json.add("requests", requests);
+
+		JsonObject counters = new JsonObject();
+		new TreeMap<>(COUNTERS).forEach((event, count) -> counters.addProperty(event, count.sum()));
+		json.add("counters", counters);
+
+		return json;
+	}
+
+	static String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("# HELP ").append(PREFIX).append("phase_duration_seconds Time spent in install phases.\n");
+		sb.append("# TYPE ").append(PREFIX).append("phase_duration_seconds histogram\n");
+		new TreeMap<>(PHASES).forEach((phase, histogram) -> histogram.appendPrometheus(sb, PREFIX + "phase_duration_seconds", "phase", phase));
+
+		sb.append("# HELP ").append(PREFIX).append("request_duration_seconds HTTP request latency until the body was read.\n");
+		sb.append("# TYPE ").append(PREFIX).append("request_duration_seconds histogram\n");
+		new TreeMap<>(REQUESTS).forEach((host, histogram) -> histogram.appendPrometheus(sb, PREFIX + "request_duration_seconds", "host", host));
+
+		appendCounters(sb, "request_bytes_total", "Bytes received per host.", "host", BYTES);
+		appendCounters(sb, "request_failures_total", "Failed HTTP requests per host.", "host", FAILURES);
+		appendCounters(sb, "events_total", "Retries, cache hits and other events.", "event", COUNTERS);
+
+		return sb.toString();
+	}
+
+	private static void appendCounters(StringBuilder sb, String name, String help, String label, Map<String, LongAdder> counters) {
+		sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+		new TreeMap<>(counters).forEach((key, count) -> sb.append(PREFIX).append(name).append(labels(label, key, null)).append(' ').append(count.sum()).append('\n'));
+	}
+
+	private static String labels(String label, String value, String le) {
+		String ret = "{" + label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+		if (le != null) ret += ",le=\"" + le + "\"";
+
+		return ret + "}";
+	}
+
+	private static long get(Map<String, LongAdder> counters, String key) {
+		LongAdder adder = counters.get(key);
+		return adder != null ? adder.sum() : 0;
+	}
+
+	public static final class Timer implements AutoCloseable {
+		private final Histogram histogram;
+		private final long start = System.nanoTime();
+
+		private Timer(Histogram histogram) {
+			this.histogram = histogram;
+		}
+
+		@Override
+		public void close() {
+			histogram.record(System.nanoTime() - start);
+		}
+	}
+
+	private static final class Histogram {
+		final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MS.length + 1);
+		final LongAdder sum = new LongAdder();
+		final LongAdder count = new LongAdder();
+		final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		void record(long nanos) {
+			int bucket = 0;
+
+			// compared in ns, a 10.9 ms request doesn't belong in the 10 ms bucket
+			while (bucket < BUCKETS_NS.length && nanos > BUCKETS_NS[bucket]) {
+				bucket++;
+			}
+
+			buckets.incrementAndGet(bucket);
+			sum.add(nanos);
+			count.increment();
+			max.accumulate(nanos);
+		}
+
+		JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.addProperty("count", count.sum());
+			json.addProperty("total_ms", TimeUnit.NANOSECONDS.toMillis(sum.sum()));
+			json.addProperty("max_ms", TimeUnit.NANOSECONDS.toMillis(max.get()));
+
+			JsonArray histogram = new JsonArray();
+
+			for (int i = 0; i < buckets.length(); i++) {
+				JsonObject bucket = new JsonObject();
+				bucket.addProperty("le_ms", i < BUCKETS_MS.length ? Long.toString(BUCKETS_MS[i]) : "+Inf");
+				bucket.addProperty("count", buckets.get(i));
+				histogram.add(bucket);
+			}
+
+			json.add("histogram", histogram);
+			return json;
+		}
+
+		void appendPrometheus(StringBuilder sb, String name, String label, String value) {
+			long cumulative = 0;
+
+			for (int i = 0; i < buckets.length(); i++) {
+				cumulative += buckets.get(i);
+				String le = i < BUCKETS_MS.length ? String.format(Locale.ROOT, "%.3f", BUCKETS_MS[i] / 1000.0) : "+Inf";
+				sb.append(name).append("_bucket").append(labels(label, value, le)).append(' ').append(cumulative).append('\n');
+			}
+
+			sb.append(name).append("_sum").append(labels(label, value, null)).append(' ').append(String.format(Locale.ROOT, "%.3f", sum.sum() / 1e9)).append('\n');
+			sb.append(name).append("_count").append(labels(label, value, null)).append(' ').append(cumulative).append('\n');
+		}
+	}
+
+	private Metrics() {
+	}
+}
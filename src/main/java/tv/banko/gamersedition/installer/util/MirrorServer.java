@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server proxying Fabric Meta, Fabric Maven and the GitHub release assets for other installers on the network.
+ *
+ * <p>Responses are served through the {@link MetadataCache} and {@link ArtifactCache} of this installer, so each
+ * document and artifact is fetched from the internet once and revalidated like on a regular install. Clients use it
+ * with {@code -mirror http://host:port/}, which maps to {@link #META_PATH}, {@link #MAVEN_PATH} and
+ * {@link #RELEASES_PATH} below it.
+ */
+public final class MirrorServer {
+	public static final String META_PATH = "meta/";
+	public static final String MAVEN_PATH = "maven/";
+	public static final String RELEASES_PATH = "releases/";
+	public static final int THREADS = 16;
+
+	private final Path tempDir;
+
+	/**
+	 * Start serving on port, the server keeps running until the process is stopped.
+	 */
+	public static void start(int port) throws IOException {
+		if (ArtifactCache.get() == null) {
+			System.out.println("Warning: the artifact cache is disabled, the mirror downloads every request again");
+		}
+
+		MirrorServer mirror = new MirrorServer(Files.createTempDirectory("gamers-edition-mirror"));
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		AtomicInteger threadId = new AtomicInteger();
+
+		server.setExecutor(Executors.newFixedThreadPool(THREADS, r -> new Thread(r, "Mirror #" + threadId.incrementAndGet())));
+		server.createContext("/" + META_PATH, exchange -> mirror.handle(exchange, META_PATH));
+		server.createContext("/" + MAVEN_PATH, exchange -> mirror.handle(exchange, MAVEN_PATH));
+		server.createContext("/" + RELEASES_PATH, exchange -> mirror.handle(exchange, RELEASES_PATH));
+		server.start();
+
+		System.out.println("Serving mirror on port " + server.getAddress().getPort() + ", install with -mirror http://<this host>:" + server.getAddress().getPort() + "/");
+	}
+
+	private MirrorServer(Path tempDir) {
+		this.tempDir = tempDir;
+	}
+
+	private void handle(HttpExchange exchange, String prefix) throws IOException {
+		long start = System.nanoTime();
+		String path = exchange.getRequestURI().getRawPath().substring(prefix.length() + 1);
+		int status;
+
+		try {
+			if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+				status = 405;
+			} else if (path.isEmpty() || path.startsWith("/") || path.contains("..") || path.contains("\\")) {
+				status = 400;
+			} else {
+				status = serve(exchange, prefix, path);
+			}
+		} catch (HttpTransport.StatusException e) {
+			status = e.isServerError() ? 502 : e.status;
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Mirror request for " + prefix + path + " failed: " + e);
+			status = 502;
+		}
+
+		if (exchange.getResponseCode() == -1) {
+			exchange.sendResponseHeaders(status, -1);
+		} // else the response was sent and failed part way, closing the exchange aborts it
+
+		exchange.close();
+		System.out.println(String.format("Mirror: %s %s%s %d in %d ms", exchange.getRequestMethod(), prefix, path, status, (System.nanoTime() - start) / 1_000_000));
+	}
+
+	/**
+	 * Send the response for path, returns the status if the response wasn't sent.
+	 */
+	private int serve(HttpExchange exchange, String prefix, String path) throws IOException {
+		switch (prefix) {
+		case META_PATH:
+			send(exchange, FabricService.readMeta(path, MirrorServer::readBytes));
+			return 200;
+		case MAVEN_PATH:
+			String url = Reference.DEFAULT_MAVEN_SERVER + path;
+
+			if (!path.endsWith(".jar")) { // metadata such as .sha1 and .json files, revalidated once the TTL expires
+				send(exchange, FabricService.readSubstitutedMaven(url, MirrorServer::readBytes));
+				return 200;
+			}
+
+			// released artifacts don't change, serve them from the artifact cache
+			Path file = Files.createTempFile(tempDir, "artifact", ".jar");
+
+			try {
+				FabricService.downloadSubstitutedMaven(url, file, null);
+				send(exchange, file);
+			} finally {
+				Files.deleteIfExists(file);
+			}
+
+			return 200;
+		case RELEASES_PATH:
+			// "latest" release assets change, so they are cached as metadata rather than artifacts. They are revalidated on
+			// every request, otherwise version.json and mod.jar could be served from different releases for up to a TTL
+			try (InputStream is = MetadataCache.openRevalidated(new URL(Reference.GAMERS_EDITION_RELEASES + path))) {
+				send(exchange, readBytes(is));
+			}
+
+			return 200;
+		default:
+			return 404;
+		}
+	}
+
+	private static void send(HttpExchange exchange, byte[] data) throws IOException {
+		boolean head = exchange.getRequestMethod().equals("HEAD");
+		exchange.sendResponseHeaders(200, head ? -1 : data.length);
+
+		if (!head) {
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(data);
+			}
+		}
+	}
+
+	private static void send(HttpExchange exchange, Path file) throws IOException {
+		boolean head = exchange.getRequestMethod().equals("HEAD");
+		exchange.sendResponseHeaders(200, head ? -1 : Files.size(file));
+
+		if (!head) {
+			try (OutputStream os = exchange.getResponseBody()) {
+				Files.copy(file, os);
+			}
+		}
+	}
+
+	private static byte[] readBytes(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16 * 1024];
+		int len;
+
+		while ((len = is.read(buffer)) >= 0) {
+			os.write(buffer, 0, len);
+		}
+
+		return os.toByteArray();
+	}
+}
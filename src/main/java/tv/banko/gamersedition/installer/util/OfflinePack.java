@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Archive with everything an install downloads, for installing without a network connection.
+ *
+ * <p>The zip holds the files under {@code objects/<sha1>} and an {@code index.json} mapping the keys the installer
+ * requests them by to their entries: {@code meta/<path>} and {@code maven/<path>} for Fabric Meta and Maven, the URL
+ * for anything else. Requests for indexed keys are served straight from the archive, entries are streamed to their
+ * target without extracting the archive first.
+ */
+public final class OfflinePack {
+	public static final String INDEX = "index.json";
+	public static final int FORMAT = 1;
+
+	private static volatile OfflinePack active;
+
+	private final Path path;
+	private final ZipFile zip;
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Serve requests from the pack at path.
+	 */
+	public static synchronized void load(Path path) throws IOException {
+		if (active != null) active.zip.close();
+
+		active = new OfflinePack(path);
+		System.out.println(String.format("Installing from %s with %d files", path, active.entries.size()));
+	}
+
+	/**
+	 * Open the packed file for key, or return null if there is no active pack or it doesn't contain key.
+	 */
+	public static InputStream open(String key) throws IOException {
+		OfflinePack pack = active;
+		if (pack == null) return null;
+
+		Entry entry = pack.entries.get(key);
+		if (entry == null) return null;
+
+		return pack.zip.getInputStream(entry.zipEntry);
+	}
+
+	/**
+	 * Copy the packed file for key to target, hashing it while it is written. A file that doesn't match the expected
+	 * hashes or the index is rejected and target is left untouched.
+	 *
+	 * @param sha1 expected SHA-1, or null to check against the index only
+	 * @param sha256 expected SHA-256, or null if unknown
+	 * @return the SHA-1 of the file, or null if there is no active pack or it doesn't contain key
+	 */
+	public static String extract(String key, Path target, String sha1, String sha256) throws IOException {
+		OfflinePack pack = active;
+		if (pack == null) return null;
+
+		Entry entry = pack.entries.get(key);
+		if (entry == null) return null;
+
+		if (sha1 != null && !Digests.hexEquals(sha1, entry.sha1)) {
+			throw new IOException(String.format("%s in %s has SHA-1 %s, expected %s", key, pack.path, entry.sha1, sha1));
+		}
+
+		Files.createDirectories(target.toAbsolutePath().getParent());
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		MessageDigest sha1Digest = Digests.newDigest("SHA-1");
+		MessageDigest sha256Digest = sha256 != null ? Digests.newDigest("SHA-256") : null;
+
+		try {
+			InputStream is = new DigestInputStream(pack.zip.getInputStream(entry.zipEntry), sha1Digest);
+			if (sha256Digest != null) is = new DigestInputStream(is, sha256Digest);
+
+			try {
+				Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				is.close();
+			}
+
+			String actualSha1 = Digests.toHex(sha1Digest.digest());
+
+			if (!Digests.hexEquals(entry.sha1, actualSha1)) {
+				throw new IOException(String.format("%s in %s is corrupt, SHA-1 is %s, expected %s", key, pack.path, actualSha1, entry.sha1));
+			}
+
+			if (sha256Digest != null) {
+				String actualSha256 = Digests.toHex(sha256Digest.digest());
+
+				if (!Digests.hexEquals(sha256, actualSha256)) {
+					throw new IOException(String.format("%s in %s has SHA-256 %s, expected %s", key, pack.path, actualSha256, sha256));
+				}
+			}
+
+			Utils.moveAtomically(tmp, target);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+
+		return entry.sha1;
+	}
+
+	public static boolean isActive() {
+		return active != null;
+	}
+
+	private OfflinePack(Path path) throws IOException {
+		this.path = path;
+		this.zip = new ZipFile(path.toFile());
+
+		try {
+			ZipEntry indexEntry = zip.getEntry(INDEX);
+			if (indexEntry == null) throw new IOException(path + " has no " + INDEX);
+
+			JsonObject index;
+
+			try (InputStream is = zip.getInputStream(indexEntry)) {
+				index = JsonParser.parseString(Utils.readString(is)).getAsJsonObject();
+			}
+
+			if (!index.has("format") || !index.has("entries")) throw new IOException("Invalid index in " + path);
+
+			if (index.get("format").getAsInt() != FORMAT) {
+				throw new IOException("Unsupported pack format " + index.get("format") + " in " + path);
+			}
+
+			for (Map.Entry<String, JsonElement> element : index.getAsJsonObject("entries").entrySet()) {
+				JsonObject json = element.getValue().getAsJsonObject();
+				if (!json.has("name") || !json.has("sha1")) throw new IOException("Invalid index entry " + element.getKey() + " in " + path);
+
+				ZipEntry zipEntry = zip.getEntry(json.get("name").getAsString());
+
+				if (zipEntry == null) throw new IOException(path + " misses " + json.get("name").getAsString());
+
+				entries.put(element.getKey(), new Entry(zipEntry, json.get("sha1").getAsString()));
+			}
+		} catch (JsonParseException | IllegalStateException e) {
+			zip.close();
+			throw new IOException("Invalid index in " + path, e);
+		} catch (IOException | RuntimeException e) {
+			zip.close();
+			throw e;
+		}
+	}
+
+	private static final class Entry {
+		final ZipEntry zipEntry;
+		final String sha1;
+
+		Entry(ZipEntry zipEntry, String sha1) {
+			this.zipEntry = zipEntry;
+			this.sha1 = sha1;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.text.MessageFormat;
+
+/**
+ * Snapshot of an install's progress, produced by a {@link ProgressTracker}.
+ */
+public final class ProgressEvent {
+	public final Phase phase;
+	/**
+	 * Localized description of the phase.
+	 */
+	public final String message;
+	/**
+	 * Name of the item started last, or null.
+	 */
+	public final String item;
+	public final int itemsDone;
+	public final int itemsTotal;
+	public final long bytesDone;
+	/**
+	 * Bytes to transfer in this phase, or -1 if unknown.
+	 */
+	public final long bytesTotal;
+	public final long bytesPerSecond;
+	/**
+	 * Estimated milliseconds until the phase completes, or -1 if unknown.
+	 */
+	public final long etaMillis;
+
+	ProgressEvent(Phase phase, String message, String item, int itemsDone, int itemsTotal, long bytesDone, long bytesTotal, long bytesPerSecond, long etaMillis) {
+		this.phase = phase;
+		this.message = message;
+		this.item = item;
+		this.itemsDone = itemsDone;
+		this.itemsTotal = itemsTotal;
+		this.bytesDone = bytesDone;
+		this.bytesTotal = bytesTotal;
+		this.bytesPerSecond = bytesPerSecond;
+		this.etaMillis = etaMillis;
+	}
+
+	/**
+	 * Get the completed fraction of the phase between 0 and 1, or -1 if unknown.
+	 */
+	public double getFraction() {
+		if (bytesTotal > 0) return Math.min(1, bytesDone / (double) bytesTotal);
+		if (itemsTotal > 0) return itemsDone / (double) itemsTotal;
+
+		return -1;
+	}
+
+	/**
+	 * Format the event as a single line, e.g. for a status label or the console.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(message);
+
+		if (itemsTotal > 0) {
+			sb.append(' ').append(itemsDone).append('/').append(itemsTotal);
+		}
+
+		if (bytesDone > 0) {
+			sb.append(", ").append(Utils.formatBytes(bytesDone));
+			if (bytesTotal > 0) sb.append(" / ").append(Utils.formatBytes(bytesTotal));
+			if (bytesPerSecond > 0) sb.append(", ").append(Utils.formatBytes(bytesPerSecond)).append("/s");
+		}
+
+		if (etaMillis >= 0) {
+			sb.append(", ").append(new MessageFormat(Utils.BUNDLE.getString("progress.eta")).format(new Object[]{(etaMillis + 999) / 1000}));
+		}
+
+		return sb.toString();
+	}
+
+	public enum Phase {
+		PREPARING,
+		JAVA,
+		MOD,
+		LIBRARIES,
+		DONE
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the progress of an install from any number of download workers and passes snapshots to an
+ * {@link InstallerProgress} at its {@link InstallerProgress#getFrameRate() frame rate}.
+ *
+ * <p>Updates are lock-free counter increments, the snapshot, throughput and ETA are only computed when a frame is
+ * rendered and unchanged frames are skipped. The cost of rendering doesn't depend on the number of downloads.
+ *
+ * <p>Bytes that were already on disk, served from the artifact cache, an offline pack or the part file of a resumed
+ * download, count towards the progress but not the throughput, so they don't distort the ETA.
+ */
+public final class ProgressTracker implements Closeable {
+	private static final double RATE_SMOOTHING = 0.3; // weight of the newest frame in the throughput
+	private static final ThreadLocal<ProgressTracker> CURRENT = new ThreadLocal<>();
+	private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "Progress");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final InstallerProgress listener;
+	private final ScheduledFuture<?> future;
+
+	private final AtomicLong version = new AtomicLong(); // changes with everything but the byte count
+	private volatile ProgressEvent.Phase phase = ProgressEvent.Phase.PREPARING;
+	private volatile String message = "";
+	private volatile String item;
+	private final AtomicInteger itemsDone = new AtomicInteger();
+	private final AtomicInteger itemsTotal = new AtomicInteger();
+	private final LongAdder bytesDone = new LongAdder();
+	private final LongAdder bytesLocal = new LongAdder(); // part of bytesDone that wasn't transferred
+	private final AtomicLong bytesTotal = new AtomicLong();
+
+	// frame state, guarded by this
+	private long renderedVersion = -1;
+	private long renderedBytes = -1;
+	private long sampleTime;
+	private long sampleBytes;
+	private double rate;
+	private boolean closed;
+
+	/**
+	 * Start rendering the progress to listener until the tracker is closed.
+	 */
+	public static ProgressTracker start(InstallerProgress listener) {
+		return new ProgressTracker(listener);
+	}
+
+	private ProgressTracker(InstallerProgress listener) {
+		this.listener = listener;
+
+		long interval = TimeUnit.SECONDS.toMillis(1) / Math.max(1, listener.getFrameRate());
+		this.future = TICKER.scheduleAtFixedRate(this::render, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start a new phase, resetting the item and byte counts.
+	 */
+	public void phase(ProgressEvent.Phase phase, String message) {
+		this.phase = phase;
+		this.message = message;
+		this.item = null;
+		itemsDone.set(0);
+		itemsTotal.set(0);
+		bytesDone.reset();
+		bytesLocal.reset();
+		bytesTotal.set(0);
+		version.incrementAndGet();
+
+		render(); // right away, so the phase is shown before messages sent while it runs
+	}
+
+	/**
+	 * Add items to the current phase.
+	 *
+	 * @param bytes their total size, or -1 if unknown which makes the phase's byte total unknown
+	 */
+	public void addItems(int count, long bytes) {
+		itemsTotal.addAndGet(count);
+		bytesTotal.getAndUpdate(total -> total < 0 || bytes < 0 ? -1 : total + bytes);
+		version.incrementAndGet();
+	}
+
+	public void startItem(String name) {
+		item = name;
+		version.incrementAndGet();
+	}
+
+	public void finishItem() {
+		itemsDone.incrementAndGet();
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Finish an item without transferring it, e.g. because it is up to date.
+	 *
+	 * @param bytes its size as passed to {@link #addItems}
+	 */
+	public void skipItem(long bytes) {
+		if (bytes >= 0) bytesTotal.getAndUpdate(total -> total < 0 ? -1 : total - bytes);
+		finishItem();
+	}
+
+	public void addBytes(long bytes) {
+		bytesDone.add(bytes);
+	}
+
+	/**
+	 * Add bytes that were available locally and didn't have to be transferred.
+	 */
+	public void addLocalBytes(long bytes) {
+		bytesDone.add(bytes);
+		bytesLocal.add(bytes);
+	}
+
+	/**
+	 * Run task with the downloads on this thread reporting their bytes to this tracker.
+	 */
+	public void track(DownloadScheduler.Task task) throws IOException {
+		ProgressTracker previous = CURRENT.get();
+		CURRENT.set(this);
+
+		try {
+			task.run();
+		} finally {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Report transferred bytes to the tracker of the current thread, if any.
+	 */
+	static void reportBytes(long bytes) {
+		ProgressTracker tracker = CURRENT.get();
+		if (tracker != null) tracker.addBytes(bytes);
+	}
+
+	/**
+	 * Report bytes available locally to the tracker of the current thread, if any.
+	 */
+	static void reportLocalBytes(long bytes) {
+		ProgressTracker tracker = CURRENT.get();
+		if (tracker != null) tracker.addLocalBytes(bytes);
+	}
+
+	private synchronized void render() {
+		if (closed) return;
+
+		long currentVersion = version.get();
+		long local = bytesLocal.sum();
+		long bytes = bytesDone.sum();
+		long transferred = bytes - local;
+		long now = System.nanoTime();
+
+		if (transferred < sampleBytes) { // new phase
+			rate = 0;
+		} else if (sampleTime != 0 && now > sampleTime) {
+			double current = (transferred - sampleBytes) * 1e9 / (now - sampleTime);
+			rate = rate == 0 ? current : rate * (1 - RATE_SMOOTHING) + current * RATE_SMOOTHING;
+		}
+
+		sampleTime = now;
+		sampleBytes = transferred;
+
+		if (currentVersion == renderedVersion && bytes == renderedBytes) return;
+
+		renderedVersion = currentVersion;
+		renderedBytes = bytes;
+
+		long total = bytesTotal.get();
+		long eta = total > bytes && rate > 0 ? (long) ((total - bytes) * 1000 / rate) : -1;
+
+		listener.updateProgress(new ProgressEvent(phase, message, item, itemsDone.get(), itemsTotal.get(), bytes, total, (long) rate, eta));
+	}
+
+	/**
+	 * Stop rendering. The final phase was rendered when it started, later frames could hide an error shown after this.
+	 */
+	@Override
+	public synchronized void close() {
+		future.cancel(false);
+		closed = true;
+	}
+}
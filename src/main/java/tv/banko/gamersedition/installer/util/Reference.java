@@ -18,12 +18,14 @@ package tv.banko.gamersedition.installer.util;
 
 public class Reference {
 	public static final String LOADER_NAME = "wflwr-gamers-edition";
+	public static final String CACHE_DIR_NAME = LOADER_NAME + "-installer";
 
 	public static final String FABRIC_API_URL = "https://www.curseforge.com/minecraft/mc-mods/fabric-api/";
 	public static final String MINECRAFT_LAUNCHER_MANIFEST = "https://launchermeta.mojang.com/mc/game/version_manifest_v2.json";
 	public static final String EXPERIMENTAL_LAUNCHER_MANIFEST = "https://maven.fabricmc.net/net/minecraft/experimental_versions.json";
-	public static final String GAMERS_EDITION_DOWNLOAD = "https://github.com/MCWorldrun/public/releases/latest/download/mod.jar";
-	public static final String GAMERS_EDITION_VERSION = "https://github.com/MCWorldrun/public/releases/latest/download/version.json";
+	public static final String GAMERS_EDITION_RELEASES = "https://github.com/MCWorldrun/public/releases/";
+	public static final String GAMERS_EDITION_DOWNLOAD = GAMERS_EDITION_RELEASES + "latest/download/mod.jar";
+	public static final String GAMERS_EDITION_VERSION = GAMERS_EDITION_RELEASES + "latest/download/version.json";
 
 	static final String DEFAULT_META_SERVER = "https://meta.fabricmc.net/";
 	static final String DEFAULT_MAVEN_SERVER = "https://maven.fabricmc.net/";
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Download into a {@code .part} file that survives failures and is continued with a HTTP range request.
+ *
+ * <p>The validator ({@code ETag} or {@code Last-Modified}) of the first response is persisted next to the part file
+ * and sent as {@code If-Range}, so a changed file on the server restarts the download instead of corrupting it.
+ * Servers that don't honour ranges simply answer with the full file.
+ *
+ * <p>The data is hashed as it arrives, so the checksum is known once the last byte is written and a mismatching
+ * file is rejected before it replaces the target, without reading it back from disk.
+ */
+final class ResumableDownload {
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final URL url;
+	private final Path target;
+	private final Path part;
+	private final Path partInfo;
+	private final String expectedSha1;
+	private final String expectedSha256;
+	private MessageDigest sha1;
+	private MessageDigest sha256;
+	private long reported; // bytes of the file reported to the ProgressTracker, see report()
+
+	/**
+	 * @param expectedSha1 expected SHA-1 of the file or null if unknown
+	 * @param expectedSha256 expected SHA-256 of the file or null if unknown
+	 */
+	ResumableDownload(URL url, Path target, String expectedSha1, String expectedSha256) {
+		this.url = url;
+		this.target = target;
+		this.expectedSha1 = expectedSha1;
+		this.expectedSha256 = expectedSha256;
+		this.part = target.resolveSibling(target.getFileName() + ".part");
+		this.partInfo = target.resolveSibling(target.getFileName() + ".part.properties");
+	}
+
+	/**
+	 * Download the file.
+	 *
+	 * @return the SHA-1 of the downloaded file
+	 */
+	String run() throws IOException {
+		Files.createDirectories(target.getParent());
+
+		IOException exc = null;
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			long before = Files.exists(part) ? Files.size(part) : 0;
+
+			try {
+				transfer();
+				String sha1 = checkDigests();
+				complete();
+				return sha1;
+			} catch (IOException e) {
+				if (exc == null) {
+					exc = e;
+				} else {
+					exc.addSuppressed(e);
+				}
+
+				long after = Files.exists(part) ? Files.size(part) : 0;
+
+				// only retry if the attempt made progress that can be resumed, other failures go to the mirror fallbacks
+				if (after <= before || !Files.exists(partInfo)) break;
+
+				System.out.println("Download of " + url + " interrupted after " + Utils.formatBytes(after) + ", resuming: " + e);
+				Metrics.increment("retry_resume");
+			}
+		}
+
+		throw exc;
+	}
+
+	private void transfer() throws IOException {
+		long offset = Files.exists(part) ? Files.size(part) : 0;
+		String validator = offset > 0 ? readValidator() : null;
+		Map<String, String> headers = new HashMap<>();
+
+		if (validator != null) {
+			headers.put("Range", "bytes=" + offset + "-");
+			headers.put("If-Range", validator);
+		} else {
+			offset = 0;
+		}
+
+		HttpTransport.Response response = Utils.getHttpTransport().get(Utils.substituteRelease(url), headers);
+		int status = response.getStatus();
+		long expectedSize;
+
+		if (status == 416) { // the part file doesn't fit the remote file anymore
+			Utils.discard(response);
+			reset();
+			throw new IOException("HTTP request to " + url + " rejected range at " + offset);
+		} else if (status == 206) {
+			if (!isExpectedRange(response.getHeader("Content-Range"), offset)) {
+				Utils.discard(response);
+				reset();
+				throw new IOException("HTTP request to " + url + " returned unexpected range " + response.getHeader("Content-Range"));
+			}
+
+			expectedSize = getTotalSize(response.getHeader("Content-Range"));
+		} else if (status >= 200 && status < 300) {
+			offset = 0; // full response, the server ignored or invalidated the range
+			expectedSize = parseLong(response.getHeader("Content-Length"));
+			writeValidator(response);
+		} else {
+			Utils.discard(response);
+			throw new HttpTransport.StatusException(url, status);
+		}
+
+		StandardOpenOption mode = offset > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+		resetDigests(offset);
+		report(offset, false); // the part file kept from an earlier run
+		long position = offset;
+
+		try {
+			try (InputStream in = digest(response.getBody());
+					OutputStream out = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+				byte[] buffer = new byte[64 * 1024];
+				int len;
+
+				while ((len = in.read(buffer)) >= 0) {
+					out.write(buffer, 0, len);
+					position += len;
+					report(position, true);
+				}
+			}
+
+			// checked once the part file is closed and its size final
+			if (expectedSize >= 0 && Files.size(part) != expectedSize) {
+				throw new IOException("Download of " + url + " ended after " + Files.size(part) + " of " + expectedSize + " bytes");
+			}
+		} catch (IOException e) {
+			if (!Files.exists(partInfo)) reset(); // not resumable, don't keep the partial file around
+			throw e;
+		}
+	}
+
+	/**
+	 * Report the progress of the file up to position. Every byte is reported once, an attempt that starts over only
+	 * reports what goes beyond the earlier attempts.
+	 *
+	 * @param transferred whether the bytes were transferred or already on disk
+	 */
+	private void report(long position, boolean transferred) {
+		if (position <= reported) return;
+
+		if (transferred) {
+			ProgressTracker.reportBytes(position - reported);
+		} else {
+			ProgressTracker.reportLocalBytes(position - reported);
+		}
+
+		reported = position;
+	}
+
+	private void resetDigests(long offset) throws IOException {
+		sha1 = Digests.newDigest("SHA-1");
+		sha256 = expectedSha256 != null ? Digests.newDigest("SHA-256") : null;
+
+		if (offset == 0) return;
+
+		// the digests have to cover the part downloaded by an earlier attempt, offset is the size of the part file
+		try (FileChannel channel = FileChannel.open(part, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+			while (channel.read(buffer) >= 0) {
+				sha1.update(buffer.array(), 0, buffer.position());
+				if (sha256 != null) sha256.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+		}
+	}
+
+	private InputStream digest(InputStream in) {
+		in = new DigestInputStream(in, sha1);
+		if (sha256 != null) in = new DigestInputStream(in, sha256);
+
+		return in;
+	}
+
+	/**
+	 * Compare the digests of the completed part file, a mismatching file is discarded.
+	 *
+	 * @return the SHA-1 of the file
+	 */
+	private String checkDigests() throws IOException {
+		String actualSha1 = Digests.toHex(sha1.digest());
+		String actualSha256 = sha256 != null ? Digests.toHex(sha256.digest()) : null;
+
+		if (expectedSha1 != null && !Digests.hexEquals(expectedSha1, actualSha1)) {
+			reset();
+			throw new ChecksumException(url, "SHA-1", expectedSha1, actualSha1);
+		}
+
+		if (expectedSha256 != null && !Digests.hexEquals(expectedSha256, actualSha256)) {
+			reset();
+			throw new ChecksumException(url, "SHA-256", expectedSha256, actualSha256);
+		}
+
+		return actualSha1;
+	}
+
+	private void complete() throws IOException {
+		Utils.moveAtomically(part, target);
+
+		Files.deleteIfExists(partInfo);
+	}
+
+	private void reset() throws IOException {
+		Files.deleteIfExists(part);
+		Files.deleteIfExists(partInfo);
+	}
+
+	private String readValidator() throws IOException {
+		if (!Files.exists(partInfo)) return null;
+
+		Properties properties = new Properties();
+
+		try (InputStream is = Files.newInputStream(partInfo)) {
+			properties.load(is);
+		}
+
+		if (!url.toString().equals(properties.getProperty("url"))) return null;
+
+		return properties.getProperty("validator");
+	}
+
+	/**
+	 * Persist the validator before the body is written, only strong validators can be used for If-Range.
+	 */
+	private void writeValidator(HttpTransport.Response response) throws IOException {
+		String validator = response.getHeader("ETag");
+
+		if (validator == null || validator.startsWith("W/")) {
+			validator = response.getHeader("Last-Modified");
+		}
+
+		if (validator == null || "none".equalsIgnoreCase(response.getHeader("Accept-Ranges"))) {
+			Files.deleteIfExists(partInfo);
+			return;
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("url", url.toString());
+		properties.setProperty("validator", validator);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		properties.store(os, null);
+		Utils.writeToFile(partInfo, os.toByteArray());
+	}
+
+	private static boolean isExpectedRange(String contentRange, long offset) {
+		// bytes <start>-<end>/<total>
+		return contentRange != null && contentRange.trim().startsWith("bytes " + offset + "-");
+	}
+
+	private static long getTotalSize(String contentRange) {
+		int slash = contentRange.lastIndexOf('/');
+		return slash < 0 ? -1 : parseLong(contentRange.substring(slash + 1));
+	}
+
+	private static long parseLong(String value) {
+		if (value == null) return -1;
+
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1; // absent or "*"
+		}
+	}
+
+	static final class ChecksumException extends IOException {
+		ChecksumException(URL url, String algorithm, String expected, String actual) {
+			super(String.format("%s of %s is %s, expected %s", algorithm, url, actual, expected));
+		}
+	}
+}
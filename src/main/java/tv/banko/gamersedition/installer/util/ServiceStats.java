@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.banko.gamersedition.installer.util;
+
+import java.util.Arrays;
+
+/**
+ * Rolling latency and error statistics of a {@link FabricService}.
+ */
+final class ServiceStats {
+	private static final int SAMPLES = 32;
+	private static final int MIN_PERCENTILE_SAMPLES = 5;
+	private static final double ERROR_DECAY = 0.2; // weight of the newest result in the error rate
+
+	private final long[] latencies = new long[SAMPLES]; // ring buffer of successful request latencies in ns
+	private int count;
+	private int next;
+	private double errorRate;
+
+	synchronized void recordSuccess(long latencyNanos) {
+		latencies[next] = latencyNanos;
+		next = (next + 1) % SAMPLES;
+		if (count < SAMPLES) count++;
+
+		errorRate *= 1 - ERROR_DECAY;
+	}
+
+	synchronized void recordFailure() {
+		errorRate = errorRate * (1 - ERROR_DECAY) + ERROR_DECAY;
+	}
+
+	/**
+	 * Get the mean latency of recent requests in ns, or -1 if nothing was measured yet.
+	 */
+	synchronized long getMeanLatency() {
+		if (count == 0) return -1;
+
+		long sum = 0;
+
+		for (int i = 0; i < count; i++) {
+			sum += latencies[i];
+		}
+
+		return sum / count;
+	}
+
+	/**
+	 * Get a latency percentile in ns, or -1 if there are too few samples for a meaningful value.
+	 */
+	synchronized long getLatencyPercentile(double percentile) {
+		if (count < MIN_PERCENTILE_SAMPLES) return -1;
+
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+
+		return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+	}
+
+	synchronized double getErrorRate() {
+		return errorRate;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long mean = getMeanLatency();
+
+		return String.format("mean %s, error rate %.0f%%",
+				mean < 0 ? "n/a" : mean / 1_000_000 + " ms",
+				errorRate * 100);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tv.banko.gamersedition.installer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * {@link HttpURLConnection} based transport, connections are kept alive by the JDK as long as bodies are fully read.
+ */
+final class UrlConnectionTransport implements HttpTransport {
+	@Override
+	public Response get(URL url, Map<String, String> headers) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+		conn.setConnectTimeout(TIMEOUT_MS);
+		conn.setReadTimeout(TIMEOUT_MS);
+		headers.forEach(conn::setRequestProperty);
+		conn.connect();
+
+		int status = conn.getResponseCode();
+		InputStream body = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+
+		if (body == null) {
+			body = new ByteArrayInputStream(new byte[0]);
+		}
+
+		InputStream finalBody = body;
+
+		return new Response() {
+			@Override
+			public int getStatus() {
+				return status;
+			}
+
+			@Override
+			public String getHeader(String name) {
+				return conn.getHeaderField(name);
+			}
+
+			@Override
+			public InputStream getBody() {
+				return finalBody;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "HttpURLConnection";
+	}
+}
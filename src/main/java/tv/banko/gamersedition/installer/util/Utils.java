@@ -19,24 +19,28 @@ package tv.banko.gamersedition.installer.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Utils {
 	public static final DateFormat ISO_8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
@@ -86,6 +90,25 @@ public class Utils {
 		return dir.toAbsolutePath().normalize();
 	}
 
+	public static Path findDefaultCacheDir() {
+		Path dir;
+		String home = System.getProperty("user.home", ".");
+
+		if (OperatingSystem.CURRENT == OperatingSystem.WINDOWS) {
+			String appData = System.getenv("LOCALAPPDATA");
+			if (appData == null) appData = System.getenv("APPDATA");
+
+			dir = appData != null ? Paths.get(appData) : Paths.get(home);
+		} else if (OperatingSystem.CURRENT == OperatingSystem.MACOS) {
+			dir = Paths.get(home).resolve("Library").resolve("Caches");
+		} else {
+			String xdgCache = System.getenv("XDG_CACHE_HOME");
+			dir = xdgCache != null && !xdgCache.isEmpty() ? Paths.get(xdgCache) : Paths.get(home).resolve(".cache");
+		}
+
+		return dir.resolve(Reference.CACHE_DIR_NAME).toAbsolutePath().normalize();
+	}
+
 	public static String readString(URL url) throws IOException {
 		try (InputStream is = openUrl(url)) {
 			return readString(is);
@@ -117,37 +140,171 @@ public class Utils {
 	}
 
 	public static void writeToFile(Path path, String string) throws IOException {
-		Files.write(path, string.getBytes(StandardCharsets.UTF_8));
+		writeToFile(path, string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Replace the contents of path atomically, readers either see the old or the new contents even if the process
+	 * dies or the power fails while writing.
+	 *
+	 * <p>The data is written to a temporary file next to path and synced to disk before it is moved over path.
+	 * Use {@link FileLocks#lock} around read-modify-write cycles.
+	 */
+	public static void writeToFile(Path path, byte[] data) throws IOException {
+		Path tmp = path.resolveSibling("." + path.getFileName() + "." + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE) + ".tmp");
+
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+
+				channel.force(true);
+			}
+
+			copyPermissions(path, tmp);
+			moveAtomically(tmp, path);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+
+		syncDirectory(path.toAbsolutePath().getParent());
+	}
+
+	/**
+	 * Move source over target, atomically where the file system supports it.
+	 */
+	public static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 
-	public static void downloadFile(URL url, Path path) throws IOException {
-		try (InputStream in = openUrl(url)) {
-			Files.createDirectories(path.getParent());
-			Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
-		} catch (Throwable t) {
-			try {
-				Files.deleteIfExists(path);
-			} catch (Throwable t2) {
-				t.addSuppressed(t2);
+	private static void copyPermissions(Path from, Path to) {
+		try {
+			if (Files.exists(from) && Files.getFileStore(to).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
 			}
+		} catch (IOException | UnsupportedOperationException e) {
+			// keep the default permissions
+		}
+	}
+
+	/**
+	 * Persist a rename in dir, only possible on POSIX systems.
+	 */
+	private static void syncDirectory(Path dir) {
+		if (OperatingSystem.CURRENT == OperatingSystem.WINDOWS) return;
 
-			throw t;
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported by every file system, the file contents are synced either way
 		}
 	}
 
-	private static final int HTTP_TIMEOUT_MS = 8000;
+	/**
+	 * Download url to path, an interrupted download is resumed from where it stopped by the next attempt.
+	 *
+	 * @return the SHA-1 of the downloaded file
+	 */
+	public static String downloadFile(URL url, Path path) throws IOException {
+		return downloadFile(url, path, null, null);
+	}
+
+	/**
+	 * Download url to path, checking the data against the expected hashes as it arrives.
+	 *
+	 * @param sha1 expected SHA-1 or null if unknown
+	 * @param sha256 expected SHA-256 or null if unknown
+	 * @return the SHA-1 of the downloaded file
+	 * @throws IOException if the download failed or didn't match a hash, path is left untouched in that case
+	 */
+	public static String downloadFile(URL url, Path path, String sha1, String sha256) throws IOException {
+		String packedSha1 = OfflinePack.extract(url.toString(), path, sha1, sha256);
+		if (packedSha1 != null) {
+			ProgressTracker.reportLocalBytes(Files.size(path));
+			return packedSha1;
+		}
+
+		return new ResumableDownload(url, path, sha1, sha256).run();
+	}
+
+	private static HttpTransport httpTransport;
+	private static volatile String releaseUrl;
+
+	/**
+	 * Get the transport shared by all HTTP requests, preferring the pooled Java 11+ client where available.
+	 */
+	public static synchronized HttpTransport getHttpTransport() {
+		if (httpTransport == null) {
+			httpTransport = new MeteredTransport(HttpClientTransport.isAvailable() ? new HttpClientTransport() : new UrlConnectionTransport());
+			System.out.println("Using " + httpTransport + " for HTTP requests");
+		}
+
+		return httpTransport;
+	}
+
+	/**
+	 * Force the legacy {@link java.net.HttpURLConnection} transport even if a newer one is available.
+	 */
+	public static synchronized void useLegacyHttpTransport() {
+		httpTransport = new MeteredTransport(new UrlConnectionTransport());
+	}
+
+	/**
+	 * Fetch the GitHub release assets from url instead, e.g. a {@link MirrorServer}. Cache keys keep using the
+	 * original URL.
+	 */
+	public static void setReleaseUrl(String url) {
+		releaseUrl = url;
+	}
 
-	private static InputStream openUrl(URL url) throws IOException {
-		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+	/**
+	 * Get the URL to request url from, substituting the GitHub releases if {@link #setReleaseUrl} is configured.
+	 */
+	static URL substituteRelease(URL url) throws MalformedURLException {
+		String mirror = releaseUrl;
+		String str = url.toString();
 
-		conn.setConnectTimeout(HTTP_TIMEOUT_MS);
-		conn.setReadTimeout(HTTP_TIMEOUT_MS);
-		conn.connect();
+		if (mirror == null || !str.startsWith(Reference.GAMERS_EDITION_RELEASES)) return url;
+
+		return new URL(mirror + str.substring(Reference.GAMERS_EDITION_RELEASES.length()));
+	}
 
-		int responseCode = conn.getResponseCode();
-		if (responseCode < 200 || responseCode >= 300) throw new IOException("HTTP request to "+url+" failed: "+responseCode);
+	static InputStream openUrl(URL url) throws IOException {
+		HttpTransport.Response response = getHttpTransport().get(substituteRelease(url), Collections.emptyMap());
+
+		int responseCode = response.getStatus();
+
+		if (responseCode < 200 || responseCode >= 300) {
+			discard(response);
+			throw new HttpTransport.StatusException(url, responseCode);
+		}
 
-		return conn.getInputStream();
+		return response.getBody();
+	}
+
+	/**
+	 * Read and close a response body that isn't needed so the connection can be reused.
+	 */
+	static void discard(HttpTransport.Response response) {
+		try (InputStream is = response.getBody()) {
+			byte[] buffer = new byte[4096];
+			long remaining = 64 * 1024; // not worth keeping the connection for larger bodies
+
+			int len;
+
+			while (remaining > 0 && (len = is.read(buffer)) >= 0) {
+				remaining -= len;
+			}
+		} catch (IOException ignored) {
+			// the connection is discarded instead
+		}
 	}
 
 	public static String getProfileIcon() {
@@ -169,103 +326,64 @@ public class Utils {
 		return "TNT"; // Fallback to TNT icon if we cant load Fabric icon.
 	}
 
+	private static final ThreadLocal<ByteBuffer> HASH_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(256 * 1024));
+
 	public static String sha1String(Path path) throws IOException {
 		return bytesToHex(sha1(path));
 	}
 
 	public static byte[] sha1(Path path) throws IOException {
-		MessageDigest digest = sha1Digest();
+		MessageDigest digest = Digests.sha1();
 
-		try (InputStream is = Files.newInputStream(path)) {
-			byte[] buffer = new byte[64 * 1024];
-			int len;
+		// a direct buffer saves the copy FileChannel makes through a temporary direct buffer for heap buffers
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = HASH_BUFFER.get();
+			buffer.clear();
 
-			while ((len = is.read(buffer)) >= 0) {
-				digest.update(buffer, 0, len);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
 			}
 		}
 
 		return digest.digest();
 	}
 
-	private static MessageDigest sha1Digest() {
-		try {
-			return MessageDigest.getInstance("SHA-1");
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("Something has gone really wrong", e);
-		}
+	/**
+	 * Check whether path exists with the given size and SHA-1.
+	 *
+	 * @param size expected size or -1 to only compare the hash
+	 */
+	public static boolean isFileValid(Path path, long size, String sha1) throws IOException {
+		if (!Files.isRegularFile(path)) return false;
+		if (size >= 0 && Files.size(path) != size) return false;
+
+		return Digests.hexEquals(sha1String(path), sha1);
 	}
 
-	public static String bytesToHex(byte[] bytes) {
-		StringBuilder output = new StringBuilder();
+	public static String formatBytes(long bytes) {
+		if (bytes < 1024) return bytes + " B";
 
-		for (byte b : bytes) {
-			output.append(String.format(Locale.ENGLISH, "%02x", b));
-		}
+		int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+		return String.format(Locale.ENGLISH, "%.1f %siB", bytes / (double) (1L << (unit * 10)), "KMGTPE".charAt(unit - 1));
+	}
 
-		return output.toString();
+	public static String bytesToHex(byte[] bytes) {
+		return Digests.toHex(bytes);
 	}
 
 	/**
 	 * Simple semver-like version comparison.
 	 *
+	 * <p>Versions consist of a dot separated core, an optional pre-release after a {@code -} and optional build
+	 * metadata after a {@code +}, which is ignored. Parts compare numerically if both are numbers, numbers sort before
+	 * other parts and a version without pre-release sorts after one with. Versions not in this format are compared
+	 * lexicographically. See {@link VersionNumber} for sorting many versions.
+	 *
 	 * @return <0,0,>0 if versionA is less/same/greater than versionB
 	 */
 	public static int compareVersions(String versionA, String versionB) {
-		Pattern pattern = Pattern.compile("(\\d+(?:\\.\\d+)*)(?:-([^+]+))?(?:\\+.*)?");
-		Matcher matcherA = pattern.matcher(versionA);
-		Matcher matcherB = pattern.matcher(versionB);
-		if (!matcherA.matches() || !matcherB.matches()) return versionA.compareTo(versionB);
-
-		int cmp = compareVersionGroups(matcherA.group(1), matcherB.group(1)); // compare version core
-		if (cmp != 0) return cmp;
-
-		boolean aHasPreRelease = matcherA.group(2) != null;
-		boolean bHasPreRelease = matcherB.group(2) != null;
-
-		if (aHasPreRelease != bHasPreRelease) { // compare pre-release presence
-			return aHasPreRelease ? -1 : 1;
-		}
-
-		if (aHasPreRelease) {
-			cmp = compareVersionGroups(matcherA.group(2), matcherB.group(2)); // compare pre-release
-			if (cmp != 0) return cmp;
-		}
-
-		return 0;
-	}
-
-	private static int compareVersionGroups(String groupA, String groupB) {
-		String[] partsA = groupA.split("\\.");
-		String[] partsB = groupB.split("\\.");
-
-		for (int i = 0; i < Math.min(partsA.length, partsB.length); i++) {
-			String partA = partsA[i];
-			String partB = partsB[i];
-
-			try {
-				int a = Integer.parseInt(partA);
-
-				try {
-					int b = Integer.parseInt(partB);
-					int cmp = Integer.compare(a, b); // both numeric, compare int value
-					if (cmp != 0) return cmp;
-				} catch (NumberFormatException e) {
-					return -1; // only a numeric
-				}
-			} catch (NumberFormatException e) {
-				try {
-					Integer.parseInt(partB);
-					return 1; // only b numeric
-				} catch (NumberFormatException e2) {
-					// ignore
-				}
-			}
-
-			int cmp = partA.compareTo(partB); // neither numeric, compare lexicographically
-			if (cmp != 0) return cmp;
-		}
-
-		return Integer.compare(partsA.length, partsB.length); // compare part count
+		return VersionNumber.of(versionA).compareTo(VersionNumber.of(versionB));
 	}
 }
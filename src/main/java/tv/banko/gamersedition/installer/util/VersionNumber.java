@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.util;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed version string for {@link Utils#compareVersions}, see there for the ordering.
+ *
+ * <p>The string is split into its core and pre-release groups once, with the numeric value of every part, so
+ * comparing two instances allocates nothing. Instances are interned by {@link #of}, sorting a list of strings only
+ * parses each distinct string once.
+ *
+ * <p>The ordering is inconsistent with {@link #equals}: build metadata is ignored when comparing, but two versions
+ * are only equal if their strings are.
+ */
+public final class VersionNumber implements Comparable<VersionNumber> {
+	public static final Comparator<String> STRING_ORDER = Comparator.comparing(VersionNumber::of);
+
+	private static final Pattern PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)*)(?:-([^+]+))?(?:\\+.*)?");
+	private static final Pattern DOT = Pattern.compile("\\.");
+	private static final int MAX_INTERNED = 4096;
+	private static final Map<String, VersionNumber> INTERNED = new ConcurrentHashMap<>();
+
+	private final String string;
+	private final Group core; // null if the string isn't in the expected format
+	private final Group preRelease; // null without pre-release
+
+	/**
+	 * Get the parsed form of version, reusing an earlier instance for the same string.
+	 */
+	public static VersionNumber of(String version) {
+		VersionNumber ret = INTERNED.get(version);
+		if (ret != null) return ret;
+
+		ret = new VersionNumber(version);
+
+		// arbitrary strings can end up here, don't keep an unbounded number of them around
+		if (INTERNED.size() < MAX_INTERNED) {
+			VersionNumber existing = INTERNED.putIfAbsent(version, ret);
+			if (existing != null) return existing;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Parse version without interning it.
+	 */
+	public VersionNumber(String version) {
+		this.string = version;
+
+		Matcher matcher = PATTERN.matcher(version);
+
+		if (matcher.matches()) {
+			core = new Group(matcher.group(1));
+			preRelease = matcher.group(2) != null ? new Group(matcher.group(2)) : null;
+		} else {
+			core = null;
+			preRelease = null;
+		}
+	}
+
+	/**
+	 * @return <0,0,>0 if this version is less/same/greater than other
+	 */
+	@Override
+	public int compareTo(VersionNumber other) {
+		if (core == null || other.core == null) return string.compareTo(other.string);
+
+		int cmp = core.compareTo(other.core); // compare version core
+		if (cmp != 0) return cmp;
+
+		if ((preRelease != null) != (other.preRelease != null)) { // compare pre-release presence
+			return preRelease != null ? -1 : 1;
+		}
+
+		if (preRelease != null) {
+			return preRelease.compareTo(other.preRelease); // compare pre-release
+		}
+
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof VersionNumber && string.equals(((VersionNumber) obj).string);
+	}
+
+	@Override
+	public int hashCode() {
+		return string.hashCode(); // cached by String
+	}
+
+	@Override
+	public String toString() {
+		return string;
+	}
+
+	/**
+	 * Dot separated parts, numeric if {@link Integer#parseInt} accepts them.
+	 */
+	private static final class Group {
+		final String[] parts;
+		final int[] values;
+		final boolean[] numeric;
+
+		Group(String group) {
+			parts = DOT.split(group);
+			values = new int[parts.length];
+			numeric = new boolean[parts.length];
+
+			for (int i = 0; i < parts.length; i++) {
+				try {
+					values[i] = Integer.parseInt(parts[i]);
+					numeric[i] = true;
+				} catch (NumberFormatException e) {
+					// compared lexicographically
+				}
+			}
+		}
+
+		int compareTo(Group other) {
+			int count = Math.min(parts.length, other.parts.length);
+
+			for (int i = 0; i < count; i++) {
+				if (numeric[i]) {
+					if (!other.numeric[i]) return -1; // only this numeric
+
+					int cmp = Integer.compare(values[i], other.values[i]); // both numeric, compare int value
+					if (cmp != 0) return cmp;
+				} else if (other.numeric[i]) {
+					return 1; // only other numeric
+				}
+
+				int cmp = parts[i].compareTo(other.parts[i]); // same value or neither numeric, compare lexicographically
+				if (cmp != 0) return cmp;
+			}
+
+			return Integer.compare(parts.length, other.parts.length); // compare part count
+		}
+	}
+}
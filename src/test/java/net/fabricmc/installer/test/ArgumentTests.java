@@ -53,6 +53,29 @@ public class ArgumentTests {
 		ArgumentParser.create(new String[]{"-arg1"}).get("arg1");
 	}
 
+	@Test
+	public void testNumbers() {
+		ArgumentParser handler = ArgumentParser.create(new String[]{"-threads", "8", "-size", " 5 "});
+
+		Assert.assertEquals(handler.getInt("threads", 1, 32), 8);
+		Assert.assertEquals(handler.getLong("size", 0, Long.MAX_VALUE), 5);
+	}
+
+	@Test(expected = ArgumentParser.InvalidArgumentException.class)
+	public void testNotANumber() {
+		ArgumentParser.create(new String[]{"-threads", "x"}).getInt("threads", 1, 32);
+	}
+
+	@Test(expected = ArgumentParser.InvalidArgumentException.class)
+	public void testOutOfRange() {
+		ArgumentParser.create(new String[]{"-threads", "0"}).getInt("threads", 1, 32);
+	}
+
+	@Test(expected = ArgumentParser.InvalidArgumentException.class)
+	public void testMissingNumber() {
+		ArgumentParser.create(new String[]{"-threads"}).getInt("threads", 1, 32);
+	}
+
 	@Test
 	public void testCommands() {
 		Assert.assertTrue(ArgumentParser.create(new String[]{"command", "-arg1", "Hello"}).getCommand().isPresent());
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.installer.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import tv.banko.gamersedition.installer.util.Digests;
+
+public class DigestsTests {
+	@Test
+	public void hex() {
+		byte[] bytes = new byte[256];
+
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+
+		StringBuilder expected = new StringBuilder();
+
+		for (byte b : bytes) {
+			expected.append(String.format(Locale.ENGLISH, "%02x", b));
+		}
+
+		Assert.assertEquals(expected.toString(), Digests.toHex(bytes));
+		Assert.assertArrayEquals(bytes, Digests.fromHex(expected));
+		Assert.assertArrayEquals(bytes, Digests.fromHex(expected.toString().toUpperCase(Locale.ROOT)));
+		Assert.assertEquals("", Digests.toHex(new byte[0]));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void hexOddLength() {
+		Digests.fromHex("abc");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void hexInvalid() {
+		Digests.fromHex("0g");
+	}
+
+	@Test
+	public void sha1() {
+		// the pooled digest is reset between uses
+		Digests.sha1().update((byte) 1);
+		Assert.assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Digests.toHex(Digests.sha1().digest("abc".getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	public void hexEquals() {
+		byte[] bytes = new byte[20];
+		new Random(0).nextBytes(bytes);
+		String hex = Digests.toHex(bytes);
+
+		Assert.assertTrue(Digests.hexEquals(hex, hex.toUpperCase(Locale.ROOT)));
+		Assert.assertFalse(Digests.hexEquals(hex, hex.substring(1)));
+		Assert.assertFalse(Digests.hexEquals(hex, hex.substring(0, 39) + (hex.charAt(39) == '0' ? '1' : '0')));
+		Assert.assertFalse(Digests.hexEquals(hex, null));
+		Assert.assertFalse(Digests.hexEquals("zz", "zz"));
+		Assert.assertFalse(Digests.hexEquals("0\u0010", "00"));
+	}
+
+	@Test
+	public void isSha1() {
+		Assert.assertTrue(Digests.isSha1("a9993e364706816aba3e25717850c26c9cd0d89d"));
+		Assert.assertTrue(Digests.isSha1("A9993E364706816ABA3E25717850C26C9CD0D89D"));
+		Assert.assertFalse(Digests.isSha1(null));
+		Assert.assertFalse(Digests.isSha1("a9993e364706816aba3e25717850c26c9cd0d89"));
+		Assert.assertFalse(Digests.isSha1("../../../../../../../../../../../etc/pwd"));
+		Assert.assertFalse(Digests.isSha1("a9993e364706816aba3e25717850c26c9cd0d8/d"));
+	}
+}
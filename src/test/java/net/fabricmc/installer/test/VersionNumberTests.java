@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.installer.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import tv.banko.gamersedition.installer.util.Utils;
+import tv.banko.gamersedition.installer.util.VersionNumber;
+
+public class VersionNumberTests {
+	private static final List<String> VERSIONS = Arrays.asList(
+			"1.20.1", "1.20", "1.20.0", "1.20.10", "1.20.2", "1.21", "1.9", "1.10",
+			"1.20.1-pre1", "1.20.1-pre2", "1.20.1-pre10", "1.20.1-rc1", "1.20.1-rc.1", "1.20.1-rc.1.2", "1.20.1-rc.a",
+			"1.20.1+build.1", "1.20.1+build.2", "1.20.1-beta.1+build.3", "0.15.11", "0.15.11+local",
+			"01.2", "1.02", "1.2-01", "1.2-1", "1.2--1", "1.2-rc-1", "1.2-..", "1.2-a..b", "1.2-.a",
+			"99999999999.1", "2147483648", "2147483647", "1.2-99999999999",
+			"23w31a", "24w14potato", "b1.7.3", "a1.0.4", "rd-132211", "inf-20100618", "1.RV-Pre1", "3D Shareware v1.34",
+			"", "1", "1.", ".1", "1..2", "abc");
+
+	@Test
+	public void matchesReference() {
+		for (String a : VERSIONS) {
+			for (String b : VERSIONS) {
+				Assert.assertEquals(a + " vs " + b, referenceCompare(a, b), Utils.compareVersions(a, b));
+				Assert.assertEquals(a + " vs " + b, referenceCompare(a, b), new VersionNumber(a).compareTo(new VersionNumber(b)));
+			}
+		}
+	}
+
+	@Test
+	public void ordering() {
+		Assert.assertTrue(Utils.compareVersions("1.20.1", "1.20.10") < 0);
+		Assert.assertTrue(Utils.compareVersions("1.20.1-pre1", "1.20.1") < 0);
+		Assert.assertTrue(Utils.compareVersions("1.20.1-pre2", "1.20.1-pre10") > 0); // "pre2" and "pre10" aren't numeric, compared as strings
+		Assert.assertTrue(Utils.compareVersions("1.20.1-rc.2", "1.20.1-rc.10") < 0);
+		Assert.assertEquals(0, Utils.compareVersions("1.20.1+build.1", "1.20.1+build.2"));
+	}
+
+	@Test
+	public void sort() {
+		List<String> expected = Arrays.asList("0.15.11", "1.2-rc.1", "1.2-rc.2", "1.2-rc.10", "1.2", "1.2.1-alpha", "1.2.1", "1.10", "2");
+
+		List<String> actual = new ArrayList<>(expected);
+		Collections.shuffle(actual, new Random(0));
+		actual.sort(VersionNumber.STRING_ORDER);
+
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void interning() {
+		Assert.assertSame(VersionNumber.of("1.20.1"), VersionNumber.of(new String("1.20.1")));
+		Assert.assertEquals(new VersionNumber("1.20.1"), VersionNumber.of("1.20.1"));
+		Assert.assertNotEquals(VersionNumber.of("1.20.1+a"), VersionNumber.of("1.20.1+b"));
+	}
+
+	/**
+	 * The original implementation of {@link Utils#compareVersions}, the parsed form has to produce the same results.
+	 */
+	private static int referenceCompare(String versionA, String versionB) {
+		Pattern pattern = Pattern.compile("(\\d+(?:\\.\\d+)*)(?:-([^+]+))?(?:\\+.*)?");
+		Matcher matcherA = pattern.matcher(versionA);
+		Matcher matcherB = pattern.matcher(versionB);
+		if (!matcherA.matches() || !matcherB.matches()) return versionA.compareTo(versionB);
+
+		int cmp = referenceCompareGroups(matcherA.group(1), matcherB.group(1));
+		if (cmp != 0) return cmp;
+
+		boolean aHasPreRelease = matcherA.group(2) != null;
+		boolean bHasPreRelease = matcherB.group(2) != null;
+
+		if (aHasPreRelease != bHasPreRelease) {
+			return aHasPreRelease ? -1 : 1;
+		}
+
+		if (aHasPreRelease) {
+			cmp = referenceCompareGroups(matcherA.group(2), matcherB.group(2));
+			if (cmp != 0) return cmp;
+		}
+
+		return 0;
+	}
+
+	private static int referenceCompareGroups(String groupA, String groupB) {
+		String[] partsA = groupA.split("\\.");
+		String[] partsB = groupB.split("\\.");
+
+		for (int i = 0; i < Math.min(partsA.length, partsB.length); i++) {
+			String partA = partsA[i];
+			String partB = partsB[i];
+
+			try {
+				int a = Integer.parseInt(partA);
+
+				try {
+					int b = Integer.parseInt(partB);
+					int cmp = Integer.compare(a, b);
+					if (cmp != 0) return cmp;
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			} catch (NumberFormatException e) {
+				try {
+					Integer.parseInt(partB);
+					return 1;
+				} catch (NumberFormatException e2) {
+					// ignore
+				}
+			}
+
+			int cmp = partA.compareTo(partB);
+			if (cmp != 0) return cmp;
+		}
+
+		return Integer.compare(partsA.length, partsB.length);
+	}
+}
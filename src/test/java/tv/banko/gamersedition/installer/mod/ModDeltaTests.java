@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package tv.banko.gamersedition.installer.mod;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import tv.banko.gamersedition.installer.util.Utils;
+
+public class ModDeltaTests {
+	private static final long TIME = 1_600_000_000_000L;
+
+	@Test
+	public void rebuild() throws IOException {
+		Path dir = Files.createTempDirectory("mod-delta");
+
+		try {
+			byte[] library = new byte[256 * 1024];
+			new Random(1).nextBytes(library);
+
+			Path from = dir.resolve("from.jar");
+			Path to = dir.resolve("to.jar");
+			Path delta = dir.resolve("delta.zip");
+			Path installed = dir.resolve("gamers-edition.jar");
+
+			writeJar(from, "1.0.0", library, "removed.txt");
+			writeJar(to, "1.1.0", library, "added.txt");
+			Files.copy(from, installed);
+
+			ModDelta.create(from, to, delta);
+			Assert.assertTrue("unchanged entries are taken from the installed jar", Files.size(delta) < library.length);
+
+			String sha1 = Utils.sha1String(to);
+			ModDelta.apply(installed, delta, installed, sha1);
+
+			Assert.assertArrayEquals(Files.readAllBytes(to), Files.readAllBytes(installed));
+			Assert.assertTrue(ModInstaller.isInstalledValid(installed, sha1));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void rejectUnexpectedSha1() throws IOException {
+		Path dir = Files.createTempDirectory("mod-delta");
+
+		try {
+			Path from = dir.resolve("from.jar");
+			Path to = dir.resolve("to.jar");
+			Path delta = dir.resolve("delta.zip");
+
+			writeJar(from, "1.0.0", new byte[16], "a.txt");
+			writeJar(to, "1.1.0", new byte[16], "b.txt");
+			ModDelta.create(from, to, delta);
+
+			try {
+				ModDelta.apply(from, delta, from, Utils.sha1String(from));
+				Assert.fail("applied a delta that doesn't build the published jar");
+			} catch (IOException expected) {
+				// the installed jar is left alone
+			}
+
+			Assert.assertTrue(ModInstaller.isInstalledValid(from, Utils.sha1String(from)));
+			Assert.assertFalse(Files.exists(dir.resolve("from.jar.delta.tmp")));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static void writeJar(Path path, String version, byte[] library, String extra) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+			out.setComment("gamers edition " + version);
+
+			writeEntry(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8), null);
+			writeEntry(out, "fabric.mod.json", ("{\"version\": \"" + version + "\"}").getBytes(StandardCharsets.UTF_8), null);
+			writeEntry(out, "lib/library.bin", library, new byte[] {(byte) 0xfe, (byte) 0xca, 0, 0});
+			writeEntry(out, extra, extra.getBytes(StandardCharsets.UTF_8), null);
+		}
+	}
+
+	private static void writeEntry(ZipOutputStream out, String name, byte[] data, byte[] extra) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(TIME);
+		entry.setExtra(extra);
+		out.putNextEntry(entry);
+		out.write(data);
+		out.closeEntry();
+	}
+
+	private static void delete(Path dir) throws IOException {
+		try (Stream<Path> stream = Files.walk(dir)) {
+			stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}